@@ -0,0 +1,51 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import worldgenerator.RandomWorldGenerator;
+
+/**
+ * Benchmarks for the {@link RandomWorldGenerator}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GeneratorBenchmark {
+	@Param({ "10", "100", "1000", "10000" })
+	public int blocks;
+
+	private RandomWorldGenerator generator;
+	private int[] state;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		this.generator = new RandomWorldGenerator(this.blocks, 42, false);
+		this.state = new int[this.blocks];
+	}
+
+	@Benchmark
+	public String nextState() {
+		return this.generator.nextState();
+	}
+
+	@Benchmark
+	public int[] nextStateArray() {
+		return this.generator.nextState(this.state);
+	}
+}
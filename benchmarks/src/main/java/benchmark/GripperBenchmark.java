@@ -0,0 +1,70 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eisinterface.Gripper;
+import environment.BlocksWorldModel;
+
+/**
+ * Benchmarks for the percepts of the {@link Gripper}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class GripperBenchmark {
+	@Param({ "10", "100", "1000", "10000" })
+	public int blocks;
+
+	private BlocksWorldModel model;
+	private Gripper gripper;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final List<Integer> table = new ArrayList<>(this.blocks);
+		for (int n = 1; n <= this.blocks; n++) {
+			table.add(0);
+		}
+		this.model = new BlocksWorldModel(table);
+		this.gripper = new Gripper(this.model);
+		this.gripper.on();
+	}
+
+	/**
+	 * Get the percepts while nothing moved.
+	 */
+	@Benchmark
+	public List<List<String>> onUnchanged() {
+		return this.gripper.on();
+	}
+
+	/**
+	 * Move a block and get the percepts.
+	 */
+	@Benchmark
+	public List<List<String>> onAfterMove() {
+		if (this.model.isClear(2)) {
+			this.model.move(1, 2);
+		} else {
+			this.model.move(1, 0);
+		}
+		return this.gripper.on();
+	}
+}
@@ -0,0 +1,120 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import environment.BlocksWorldModel;
+
+/**
+ * Benchmarks for changing the {@link BlocksWorldModel}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ModelBenchmark {
+	@Param({ "10", "100", "1000", "10000" })
+	public int blocks;
+
+	private BlocksWorldModel model;
+	/**
+	 * One tower with block 1 on top: block i is on block i+1 and the last block
+	 * is on the table. Each block is on a block that comes later in the list,
+	 * the worst case for placing blocks in list order.
+	 */
+	private List<Integer> tower;
+	/**
+	 * One tower with block 1 at the bottom: block i is on block i-1. Each block
+	 * is on a block that comes earlier in the list.
+	 */
+	private List<Integer> towerBottomFirst;
+	private Random random;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final List<Integer> table = new ArrayList<>(this.blocks);
+		this.tower = new ArrayList<>(this.blocks);
+		this.towerBottomFirst = new ArrayList<>(this.blocks);
+		for (int n = 1; n <= this.blocks; n++) {
+			table.add(0);
+			this.tower.add(n == this.blocks ? 0 : n + 1);
+			this.towerBottomFirst.add(n - 1);
+		}
+		this.model = new BlocksWorldModel(table);
+		this.random = new Random(42);
+	}
+
+	/**
+	 * Stack block 1 on block 2 and put it back on the table. Both moves are
+	 * always possible from the all-on-table state.
+	 */
+	@Benchmark
+	public void moveAndBack() {
+		this.model.move(1, 2);
+		this.model.move(1, 0);
+	}
+
+	/**
+	 * A random move, only done if it is possible.
+	 *
+	 * @return true if the move was done.
+	 */
+	@Benchmark
+	public boolean randomMove() {
+		final int src = 1 + this.random.nextInt(this.blocks);
+		final int dest = this.random.nextInt(this.blocks + 1);
+		if (src == dest || !this.model.isClear(src) || (dest != 0 && !this.model.isClear(dest))) {
+			return false;
+		}
+		this.model.move(src, dest);
+		return true;
+	}
+
+	/**
+	 * Reset to a single tower, top block first.
+	 */
+	@Benchmark
+	public void resetTower() {
+		this.model.reset(this.tower);
+	}
+
+	/**
+	 * Reset to a single tower, bottom block first.
+	 */
+	@Benchmark
+	public void resetTowerBottomFirst() {
+		this.model.reset(this.towerBottomFirst);
+	}
+
+	/**
+	 * Fork the world and do one move in the fork, as a look ahead would.
+	 */
+	@Benchmark
+	public BlocksWorldModel forkAndMove() {
+		final BlocksWorldModel fork = this.model.fork();
+		fork.move(1, 2);
+		return fork;
+	}
+
+	@Benchmark
+	public int getFreeStackNumber() {
+		return this.model.getFreeStackNumber();
+	}
+}
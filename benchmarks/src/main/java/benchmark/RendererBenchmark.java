@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import environment.BlocksWorldModel;
+import environment.BlocksWorldRenderer;
+import environment.HMatrix3D;
+import environment.Point3D;
+
+/**
+ * Benchmarks for drawing a frame offscreen, the way the BlocksWorldPainter
+ * draws it with the default view.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RendererBenchmark {
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 600;
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int blocks;
+
+	private BlocksWorldRenderer renderer;
+	private BufferedImage image;
+	private Graphics graphics;
+	private Point3D viewPoint;
+	private HMatrix3D perspXform;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		final List<Integer> table = new ArrayList<>(this.blocks);
+		for (int n = 1; n <= this.blocks; n++) {
+			table.add(0);
+		}
+		final BlocksWorldModel model = new BlocksWorldModel(table);
+		this.renderer = new BlocksWorldRenderer(model);
+		this.image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+		this.graphics = this.image.getGraphics();
+		this.viewPoint = new Point3D(0, 1000, -1732);
+		this.perspXform = BlocksWorldRenderer.makePerspXform(this.viewPoint, WIDTH, 0, 0);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.graphics.dispose();
+	}
+
+	@Benchmark
+	public BufferedImage paint() {
+		this.renderer.paint(this.graphics, this.perspXform, this.viewPoint, WIDTH, WIDTH, HEIGHT);
+		return this.image;
+	}
+}
@@ -1,13 +1,14 @@
 package eisinterface;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 
 import eis.eis2java.environment.AbstractEnvironment;
+import eis.eis2java.translation.Translator;
 import eis.exceptions.EntityException;
 import eis.exceptions.ManagementException;
 import eis.iilang.Action;
@@ -18,24 +19,62 @@ import eis.iilang.Parameter;
 import eis.iilang.ParameterList;
 import environment.BlocksWorldModel;
 import environment.BlocksWorldPainter;
+import environment.BlocksWorldRenderer;
 import environment.Cube3D;
+import environment.WorldRenderer;
+import environment.ZBufferRenderer;
+import worldgenerator.StateCorpus;
+import worldgenerator.StateReader;
 
 /**
  * EIS2Java layer for the 3D Blocks World environment.
  *
- * Creates the AbstractEnvironemnt and hooks in the entities.
+ * Creates the AbstractEnvironemnt and hooks in the entities. The environment
+ * can host several independent worlds, each with its own gripper. The worlds
+ * share nothing, so agents controlling different grippers do not wait for each
+ * other.
  */
 @SuppressWarnings("serial")
 public class BWEnvironment extends AbstractEnvironment {
-	private BlocksWorldModel model;
-	private BlocksWorldPainter gui;
+	/**
+	 * The worlds, one per gripper.
+	 */
+	private final List<BlocksWorldModel> models = new ArrayList<>();
+	private final List<BlocksWorldPainter> guis = new ArrayList<>();
+	/**
+	 * The number of worlds, set by the worlds init parameter.
+	 */
+	private int worlds = 1;
+	/**
+	 * Corpus files used by the start parameter, mapped once and mapped again if
+	 * the file changed.
+	 */
+	private final Map<File, MappedCorpus> corpora = new HashMap<>();
+
+	/**
+	 * A mapped corpus, with the size and modification time of its file when it
+	 * was mapped.
+	 */
+	private static final class MappedCorpus {
+		final StateCorpus corpus;
+		final long length;
+		final long lastModified;
+
+		MappedCorpus(final StateCorpus corpus, final long length, final long lastModified) {
+			this.corpus = corpus;
+			this.length = length;
+			this.lastModified = lastModified;
+		}
+	}
 
 	public BWEnvironment() {
+		Translator.getInstance().registerParameter2JavaTranslator(new MoveList.Translator());
 	}
 
 	@Override
 	protected boolean isSupportedByEnvironment(final Action action) {
-		return (action.getName().equals("move") && action.getParameters().size() == 2);
+		return (action.getName().equals("move") && action.getParameters().size() == 2)
+				|| (action.getName().equals("moves") && action.getParameters().size() == 1);
 	}
 
 	@Override
@@ -45,24 +84,72 @@ public class BWEnvironment extends AbstractEnvironment {
 
 	@Override
 	public void init(final Map<String, Parameter> parameters) throws ManagementException {
-		reset(parameters); // create the model.
+		final Parameter worlds1 = parameters.get("worlds");
+		if (worlds1 != null) {
+			if (!(worlds1 instanceof Numeral) || ((Numeral) worlds1).getValue().intValue() <= 0) {
+				throw new ManagementException("expected a positive number of worlds but found " + worlds1);
+			}
+			this.worlds = ((Numeral) worlds1).getValue().intValue();
+		}
+
+		int fps = BlocksWorldPainter.DEFAULT_FPS;
+		final Parameter fps1 = parameters.get("fps");
+		if (fps1 != null) {
+			if (!(fps1 instanceof Numeral) || ((Numeral) fps1).getValue().intValue() <= 0) {
+				throw new ManagementException("expected a positive frame rate but found " + fps1);
+			}
+			fps = ((Numeral) fps1).getValue().intValue();
+		}
+		final Parameter render = parameters.get("render");
+		if (render != null && !(render instanceof Identifier && (((Identifier) render).getValue().equals("always")
+				|| ((Identifier) render).getValue().equals("idle")))) {
+			throw new ManagementException("expected render to be always or idle but found " + render);
+		}
+		final boolean idle = render != null && ((Identifier) render).getValue().equals("idle");
+		final Parameter zbuffer = parameters.get("zbuffer");
+		final boolean useZBuffer = zbuffer instanceof Identifier && ((Identifier) zbuffer).getValue().equals("true");
+
+		reset(parameters); // create the models.
 		final Parameter usegui = parameters.get("gui");
 		if (usegui == null || (usegui instanceof Identifier && ((Identifier) usegui).getValue().equals("true"))) {
-			this.gui = new BlocksWorldPainter(this.model);
+			for (int n = 0; n < this.models.size(); n++) {
+				final BlocksWorldModel model = this.models.get(n);
+				final WorldRenderer renderer = useZBuffer ? new ZBufferRenderer(model) : new BlocksWorldRenderer(model);
+				final String title = "Blocks World - " + gripperName(n);
+				this.guis.add(new BlocksWorldPainter(model, renderer, fps, idle, title, n));
+			}
 		}
 
-		// Try creating and registering an entity called gripper.
-		try {
-			registerEntity("gripper", new Gripper(this.model));
-		} catch (final EntityException e) {
-			throw new ManagementException("Could not create a gripper", e);
+		final Parameter statehash = parameters.get("statehash");
+		final boolean stateHash = statehash instanceof Identifier
+				&& ((Identifier) statehash).getValue().equals("true");
+
+		// Try creating and registering an entity called gripper for each world.
+		// With more worlds, they are called gripper1, gripper2, ...
+		for (int n = 0; n < this.models.size(); n++) {
+			final String name = gripperName(n);
+			try {
+				registerEntity(name, new Gripper(this.models.get(n), stateHash));
+			} catch (final EntityException e) {
+				throw new ManagementException("Could not create " + name, e);
+			}
 		}
 	}
 
 	/**
-	 * Creates a new model if not already there. If there is already a model, it
-	 * resets the model to the given new size. Resets the environment(-interface)
-	 * with a set of key-value-pairs.
+	 * @param n the number of the world, from 0.
+	 * @return the name of the gripper of world n: gripper if there is one world,
+	 *         otherwise gripper1, gripper2, ...
+	 */
+	private String gripperName(final int n) {
+		return (this.worlds == 1) ? "gripper" : "gripper" + (n + 1);
+	}
+
+	/**
+	 * Creates the models if not already there. If there are already models, it
+	 * resets all models to the given new configuration. Resets the
+	 * environment(-interface) with a set of key-value-pairs. The number of worlds
+	 * can only be set at init.
 	 *
 	 * @param parameters
 	 * @throws ManagementException is thrown either when the initializing is not
@@ -71,16 +158,19 @@ public class BWEnvironment extends AbstractEnvironment {
 	@Override
 	public void reset(final Map<String, Parameter> parameters) throws ManagementException {
 		// get the start config and check its type
-		ParameterList start;
+		int[] start;
 		final Parameter start1 = parameters.get("start");
 		if (start1 != null) {
 			if (start1 instanceof ParameterList) {
-				start = (ParameterList) start1;
+				start = toNumbers((ParameterList) start1);
 			} else if (start1 instanceof Identifier) {
-				try {
-					start = readNumbersFromFile(((Identifier) start1).getValue());
-				} catch (final FileNotFoundException e) {
-					throw new ManagementException("failed to read initial configuration from file " + start1, e);
+				final String value = ((Identifier) start1).getValue();
+				// "file#k" is state k in the file, unless a file has that name.
+				final int hash = value.lastIndexOf('#');
+				if (hash >= 0 && isDigits(value.substring(hash + 1)) && !findFile(value).exists()) {
+					start = readNumbersFromFile(value.substring(0, hash), value.substring(hash + 1));
+				} else {
+					start = readNumbersFromFile(value);
 				}
 			} else {
 				throw new IllegalArgumentException(
@@ -88,39 +178,64 @@ public class BWEnvironment extends AbstractEnvironment {
 			}
 		} else {
 			// no start info, use default world with 8 blocks on table.
-			start = new ParameterList();
-			for (int n = 0; n < 8; n++) {
-				start.add(new Numeral(0));
-			}
+			start = new int[8];
 		}
 
-		// convert to list of integers.
-		final List<Integer> startlist = new ArrayList<>();
-		for (final Parameter n : start) {
-			if (!(n instanceof Numeral)) {
-				throw new IllegalArgumentException("List should contain only numbers but found " + n);
+		if (this.models.isEmpty()) {
+			for (int n = 0; n < this.worlds; n++) {
+				this.models.add(new BlocksWorldModel(start));
 			}
-			startlist.add(((Numeral) n).getValue().intValue());
-		}
-
-		if (this.model == null) {
-			this.model = new BlocksWorldModel(startlist);
 		} else {
-			this.model.reset(startlist);
+			for (final BlocksWorldModel model : this.models) {
+				model.reset(start);
+			}
 		}
 
 		setState(EnvironmentState.PAUSED);
 	}
 
 	/**
-	 * Read a (Slaney-style) list of numbers from file.
+	 * Convert a list of numbers to an array.
+	 *
+	 * @param list
+	 * @return the numbers
+	 */
+	private static int[] toNumbers(final ParameterList list) {
+		final int[] numbers = new int[list.size()];
+		for (int n = 0; n < numbers.length; n++) {
+			final Parameter number = list.get(n);
+			if (!(number instanceof Numeral)) {
+				throw new IllegalArgumentException("List should contain only numbers but found " + number);
+			}
+			numbers[n] = ((Numeral) number).getValue().intValue();
+		}
+		return numbers;
+	}
+
+	/**
+	 * @param text
+	 * @return true if text is not empty and has only the digits 0-9.
+	 */
+	private static boolean isDigits(final String text) {
+		if (text.isEmpty()) {
+			return false;
+		}
+		for (int n = 0; n < text.length(); n++) {
+			if (text.charAt(n) < '0' || text.charAt(n) > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find a file, either by its absolute path or relative to the folder where the
+	 * environment interface jar can be found.
 	 *
 	 * @param filename
-	 * @return parameterlist with the numbers in the file.
-	 * @throws FileNotFoundException
+	 * @return the file, which may not exist.
 	 */
-	private ParameterList readNumbersFromFile(final String filename) throws FileNotFoundException {
-		final ParameterList list = new ParameterList();
+	private File findFile(final String filename) {
 		// first try if filename is absolute path.
 		File file = new File(filename);
 
@@ -130,22 +245,99 @@ public class BWEnvironment extends AbstractEnvironment {
 			final File envfile = new File(getClass().getProtectionDomain().getCodeSource().getLocation().getFile());
 			file = new File(envfile.getParentFile(), filename);
 		}
-		final Scanner sc = new Scanner(file);
-		while (sc.hasNextInt()) {
-			list.add(new Numeral(sc.nextInt()));
+		return file;
+	}
+
+	/**
+	 * Get a state from a file with many states. This is either a corpus made by
+	 * the generator, see {@link StateCorpus}, or a text file with one state per
+	 * line. A corpus is mapped the first time and kept until the environment is
+	 * killed, or mapped again when the size or modification time of the file
+	 * changed; a text file is read up to the state.
+	 *
+	 * @param filename the file
+	 * @param index    the number of the state in the file, from 0.
+	 * @return the state
+	 * @throws ManagementException if the file can not be read or has no such
+	 *                             state.
+	 */
+	private int[] readNumbersFromFile(final String filename, final String index) throws ManagementException {
+		final File file = findFile(filename);
+		final long k;
+		try {
+			k = Long.parseLong(index);
+		} catch (final NumberFormatException e) {
+			throw new ManagementException("expected a state number after # but found " + index, e);
+		}
+		try {
+			StateCorpus corpus = null;
+			synchronized (this.corpora) {
+				final long length = file.length();
+				final long lastModified = file.lastModified();
+				MappedCorpus mapped = this.corpora.get(file);
+				if (mapped != null && (mapped.length != length || mapped.lastModified != lastModified)) {
+					// the file was written again since it was mapped.
+					this.corpora.remove(file);
+					mapped = null;
+				}
+				if (mapped == null && StateCorpus.isCorpus(file.toPath())) {
+					mapped = new MappedCorpus(new StateCorpus(file.toPath()), length, lastModified);
+					this.corpora.put(file, mapped);
+				}
+				if (mapped != null) {
+					corpus = mapped.corpus;
+				}
+			}
+			if (corpus != null) {
+				if (k < 0 || k >= corpus.count()) {
+					throw new ManagementException("corpus " + filename + " has no state " + index);
+				}
+				return corpus.get(k, new int[corpus.size()]);
+			}
+
+			try (StateReader reader = StateReader.open(file.toPath())) {
+				for (long n = 0; n < k; n++) {
+					if (!reader.skip()) {
+						break;
+					}
+				}
+				final int[] state = (k < 0) ? null : reader.next();
+				if (state == null) {
+					throw new ManagementException("file " + filename + " has no state " + index);
+				}
+				return state;
+			}
+		} catch (final IOException e) {
+			throw new ManagementException("failed to read initial configuration from file " + filename, e);
 		}
-		sc.close();
+	}
 
-		return list;
+	/**
+	 * Read a (Slaney-style) list of numbers from file. The numbers can be
+	 * separated by commas and white space, also over several lines.
+	 *
+	 * @param filename
+	 * @return the numbers in the file.
+	 * @throws ManagementException if the file can not be read.
+	 */
+	private int[] readNumbersFromFile(final String filename) throws ManagementException {
+		try (StateReader reader = StateReader.open(findFile(filename).toPath())) {
+			return reader.readAll();
+		} catch (final IOException e) {
+			throw new ManagementException("failed to read initial configuration from file " + filename, e);
+		}
 	}
 
 	@Override
 	public void kill() throws ManagementException {
-		if (this.gui != null) {
-			this.gui.close();
-			this.gui = null;
+		for (final BlocksWorldPainter gui : this.guis) {
+			gui.close();
+		}
+		this.guis.clear();
+		this.models.clear();
+		synchronized (this.corpora) {
+			this.corpora.clear();
 		}
-		this.model = null;
 		setState(EnvironmentState.KILLED);
 	}
 
@@ -162,4 +354,18 @@ public class BWEnvironment extends AbstractEnvironment {
 			return "b" + block.getNumber();
 		}
 	}
+
+	/**
+	 * Get name for block number. 0="table", n="b"<n>
+	 *
+	 * @param n block number, or 0 for table.
+	 * @return block name or "table"
+	 */
+	public static String blockName(final int n) {
+		if (n == 0) {
+			return "table";
+		} else {
+			return "b" + n;
+		}
+	}
 }
\ No newline at end of file
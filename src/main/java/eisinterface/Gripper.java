@@ -1,65 +1,155 @@
 package eisinterface;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import eis.eis2java.annotation.AsAction;
 import eis.eis2java.annotation.AsPercept;
+import eis.eis2java.translation.Filter;
 import eis.exceptions.ActException;
 import environment.BlocksWorldModel;
-import environment.Cube3D;
 
 /**
  * this is the EIS entity that is plugged into the EIS2Java environment.
  */
 public class Gripper {
 	private final BlocksWorldModel world;
+	/**
+	 * The on/2 percept of each block, element n-1 is the percept of block n. Only
+	 * the percepts of blocks that moved are renewed.
+	 */
+	private final List<List<String>> onPercepts = new ArrayList<>();
+	/**
+	 * Block names, element n is the name of block n. Element 0 is the table.
+	 * Grows when needed.
+	 */
+	private String[] names = new String[0];
+	/**
+	 * The last returned on/2 percepts and the model version they belong to.
+	 */
+	private List<List<String>> onCache;
+	private long onCacheVersion;
+	/**
+	 * True if the statehash/2 percept is sent.
+	 */
+	private final boolean stateHash;
 
 	public Gripper(final BlocksWorldModel model) {
+		this(model, false);
+	}
+
+	/**
+	 * @param model     the world
+	 * @param stateHash true to send the statehash/2 percept.
+	 */
+	public Gripper(final BlocksWorldModel model, final boolean stateHash) {
 		this.world = model;
+		this.stateHash = stateHash;
 	}
 
 	/**
-	 * Returns the on/2 percepts.
+	 * Returns the on/2 percepts. The percepts are only sent to the agent when they
+	 * change; on/2 facts that no longer hold are sent negated. As long as the
+	 * model did not change, the same (immutable) list is returned.
 	 *
 	 * @return The percepts that represent which block is on top of another object.
 	 */
-	@AsPercept(name = "on", multiplePercepts = true, multipleArguments = true)
+	@AsPercept(name = "on", multiplePercepts = true, multipleArguments = true, filter = Filter.Type.ON_CHANGE_NEG)
 	public List<List<String>> on() {
-		final Collection<Cube3D> blocks = this.world.getBlocks();
-		final List<List<String>> onlist = new ArrayList<>(blocks.size());
-		for (final Cube3D block : blocks) {
-			final List<String> params = new ArrayList<>(2);
-			params.add(BWEnvironment.blockName(block));
-			params.add(BWEnvironment.blockName(block.getOnBlock()));
-			onlist.add(params);
+		final long version = this.world.getVersion();
+		if (this.onCache != null && this.onCacheVersion == version) {
+			return this.onCache;
+		}
+
+		final int size = this.world.takeChangedBlocks(this::setOn);
+		while (this.onPercepts.size() > size) {
+			// the world got smaller.
+			this.onPercepts.remove(this.onPercepts.size() - 1);
+		}
+
+		this.onCache = Collections.unmodifiableList(new ArrayList<>(this.onPercepts));
+		this.onCacheVersion = version;
+		return this.onCache;
+	}
+
+	/**
+	 * Returns the statehash/2 percept, if it is enabled: the Zobrist hash of the
+	 * configuration, see {@link BlocksWorldModel#getStateHash()}. Equal
+	 * configurations have equal hashes, so agents can recognise states they have
+	 * seen before without collecting all on/2 facts.
+	 * <p>
+	 * The hash is sent as its high and low 32 bits, two signed ints, because
+	 * many agent languages turn a 64-bit number into a double and lose bits.
+	 *
+	 * @return the high and low half of the hash, or nothing if the percept is
+	 *         not enabled.
+	 */
+	@AsPercept(name = "statehash", multiplePercepts = true, multipleArguments = true, filter = Filter.Type.ON_CHANGE)
+	public List<List<Integer>> statehash() {
+		if (!this.stateHash) {
+			return Collections.emptyList();
+		}
+		final long hash = this.world.getStateHash();
+		return Collections.singletonList(Arrays.asList((int) (hash >>> 32), (int) hash));
+	}
+
+	/**
+	 * Renew the on/2 percept of a block.
+	 *
+	 * @param n  the block number
+	 * @param on the block that n is on, 0 for the table.
+	 */
+	private void setOn(final int n, final int on) {
+		while (this.onPercepts.size() < n) {
+			this.onPercepts.add(null);
 		}
+		this.onPercepts.set(n - 1, Collections.unmodifiableList(Arrays.asList(name(n), name(on))));
+	}
 
-		return onlist;
+	/**
+	 * Get the name of a block. Names are made once and then reused.
+	 *
+	 * @param n the block number, 0 for the table.
+	 * @return the block name.
+	 */
+	private String name(final int n) {
+		if (n >= this.names.length) {
+			final int oldLength = this.names.length;
+			this.names = Arrays.copyOf(this.names, Math.max(n + 1, 2 * oldLength));
+			for (int i = oldLength; i < this.names.length; i++) {
+				this.names[i] = BWEnvironment.blockName(i);
+			}
+		}
+		return this.names[n];
 	}
 
 	/**
-	 * Get Cube that has given block name.
+	 * Get number of the block that has given block name.
 	 *
-	 * @param name "table" -> null, "bN" -> block N
-	 * @return the block or null
+	 * @param name "table" -> 0, "bN" -> N
+	 * @return the block number, or 0 for the table
 	 */
-	private Cube3D blockWithNumber(final String name) {
+	private int blockWithNumber(final String name) {
 		if (name.equals("table")) {
-			return null;
+			return 0;
 		}
 		if (!name.startsWith("b")) {
 			throw new IllegalArgumentException("Unknown block " + name);
 		}
 
-		final Integer blocknr = Integer.parseInt(name.substring(1));
-		final Cube3D block = this.world.get(blocknr);
-		if (block == null) {
+		final int blocknr;
+		try {
+			blocknr = Integer.parseInt(name.substring(1));
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Unknown block " + name, e);
+		}
+		if (blocknr <= 0 || blocknr > this.world.size()) {
 			throw new IllegalArgumentException("Unknown block " + name);
 		}
 
-		return block;
+		return blocknr;
 	}
 
 	/**
@@ -71,13 +161,34 @@ public class Gripper {
 	 */
 	@AsAction(name = "move")
 	public void move(final String blockname, final String targetblockname) throws ActException {
-		final Cube3D block = blockWithNumber(blockname);
-		final Cube3D targetblock = blockWithNumber(targetblockname);
+		final int block = blockWithNumber(blockname);
+		final int targetblock = blockWithNumber(targetblockname);
 
-		if (block == null) {
+		if (block == 0) {
 			throw new IllegalArgumentException("table can not be moved");
 		}
 
 		this.world.move(block, targetblock);
 	}
+
+	/**
+	 * Execute a sequence of moves in one step. The whole sequence is checked
+	 * before any block moves, so either all moves are done or none.
+	 *
+	 * @param moves the moves to do, in order.
+	 */
+	@AsAction(name = "moves")
+	public void moves(final MoveList moves) throws ActException {
+		final int[] blocks = new int[moves.size()];
+		final int[] targetblocks = new int[moves.size()];
+		for (int i = 0; i < moves.size(); i++) {
+			blocks[i] = blockWithNumber(moves.getBlock(i));
+			targetblocks[i] = blockWithNumber(moves.getTarget(i));
+			if (blocks[i] == 0) {
+				throw new IllegalArgumentException("table can not be moved");
+			}
+		}
+
+		this.world.move(blocks, targetblocks);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+package eisinterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import eis.eis2java.exception.TranslationException;
+import eis.eis2java.translation.Parameter2Java;
+import eis.iilang.Identifier;
+import eis.iilang.Parameter;
+import eis.iilang.ParameterList;
+
+/**
+ * A sequence of moves, as given to the moves action. Each move is a pair of
+ * block names: the block to move and the block (or table) to move it on.
+ */
+public class MoveList {
+	private final List<String> blocks = new ArrayList<>();
+	private final List<String> targets = new ArrayList<>();
+
+	/**
+	 * Add a move to the end of the list.
+	 *
+	 * @param block  name of the block to move
+	 * @param target name of the block to move on, or "table".
+	 */
+	public void add(final String block, final String target) {
+		this.blocks.add(block);
+		this.targets.add(target);
+	}
+
+	/**
+	 * @return the number of moves.
+	 */
+	public int size() {
+		return this.blocks.size();
+	}
+
+	/**
+	 * @param i the move index, 0 is the first move.
+	 * @return name of the block to move in move i.
+	 */
+	public String getBlock(final int i) {
+		return this.blocks.get(i);
+	}
+
+	/**
+	 * @param i the move index, 0 is the first move.
+	 * @return name of the target of move i.
+	 */
+	public String getTarget(final int i) {
+		return this.targets.get(i);
+	}
+
+	/**
+	 * Translates a list of pairs, like [[b1,b2],[b3,table]], to a MoveList.
+	 */
+	public static class Translator implements Parameter2Java<MoveList> {
+		@Override
+		public MoveList translate(final Parameter parameter) throws TranslationException {
+			if (!(parameter instanceof ParameterList)) {
+				throw new TranslationException("expected a list of moves but found " + parameter);
+			}
+			final MoveList moves = new MoveList();
+			for (final Parameter move : (ParameterList) parameter) {
+				if (!(move instanceof ParameterList) || ((ParameterList) move).size() != 2) {
+					throw new TranslationException("expected a move [Block, Target] but found " + move);
+				}
+				moves.add(name((ParameterList) move, 0), name((ParameterList) move, 1));
+			}
+			return moves;
+		}
+
+		private String name(final ParameterList move, final int i) throws TranslationException {
+			final Parameter name = move.get(i);
+			if (!(name instanceof Identifier)) {
+				throw new TranslationException("expected a block name but found " + name);
+			}
+			return ((Identifier) name).getValue();
+		}
+
+		@Override
+		public Class<MoveList> translatesTo() {
+			return MoveList.class;
+		}
+	}
+}
@@ -1,13 +1,12 @@
 package environment;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.locks.StampedLock;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -19,6 +18,16 @@ import javax.swing.event.ChangeListener;
  * Original world was using an <x,z> area of [-500,500]x[-500,500] to place the
  * blocks. Y is up
  * <p>
+ * The logical state (what is on what) is kept in a few primitive arrays indexed
+ * by block number, with index 0 standing for the table. The {@link Cube3D}s
+ * only carry the 3D geometry.
+ * <p>
+ * The model can be used from several threads. Changes are made under the write
+ * lock of a {@link StampedLock}. Reads are optimistic: they do not block a
+ * writer, and are repeated under the read lock if a writer got in between. The
+ * geometry is never touched by writers. Whoever asks for the blocks (normally
+ * the painter) brings the geometry up to date with a consistent copy of the
+ * state, so a painted frame never shows a half-done move.
  */
 public class BlocksWorldModel {
 	private final static int X0 = -500;
@@ -27,10 +36,128 @@ public class BlocksWorldModel {
 	private final static int PER_ROW = 8;
 
 	/**
-	 * All blocks, indexed by their number.
+	 * Number of blocks in the world.
+	 */
+	private int size;
+	/**
+	 * on[n] is the block that block n is on, or 0 if n is on the table.
+	 */
+	private int[] on;
+	/**
+	 * above[n] is the block that is on block n, or 0 if block n is clear.
+	 */
+	private int[] above;
+	/**
+	 * stackOf[n] is the stack number (table position) of the stack holding block
+	 * n.
+	 */
+	private int[] stackOf;
+	/**
+	 * height[n] is the number of blocks below block n, 0 if it is on the table.
+	 */
+	private int[] height;
+	/**
+	 * Scratch space for checking a sequence of moves, see
+	 * {@link #move(int[], int[])}: planOn[n] and planAbove[n] replace on[n] and
+	 * above[n] if planMark[n] is planGeneration. Guarded by the write lock.
+	 */
+	private int[] planOn;
+	private int[] planAbove;
+	private int[] planMark;
+	private int planGeneration;
+	/**
+	 * The stack numbers (table positions) that have a stack on them.
+	 */
+	private BitSet occupiedStacks;
+	/**
+	 * All stack numbers below this one are occupied.
+	 */
+	private int lowestFreeStack;
+	/**
+	 * The blocks that changed what they are on since the last call to
+	 * {@link #takeChangedBlocks(OnConsumer)}.
+	 */
+	private BitSet changedBlocks;
+	/**
+	 * An empty set of changed blocks with room for what they are on, to swap in
+	 * by {@link #takeChangedBlocks(OnConsumer)}. Null while it is in use.
+	 */
+	private volatile TakenBlocks spareBlocks;
+	/**
+	 * Zobrist hash of the on relation: the xor of {@link #zobrist(int, int)} for
+	 * each block and what it is on. Updated with every move.
+	 */
+	private long hash;
+	/**
+	 * The state version. Increases with every change of the state. Only changed
+	 * under the write lock, but can be read at any time.
+	 */
+	private volatile long version;
+	/**
+	 * movedAt[n] is the version in which block n was last moved.
+	 */
+	private long[] movedAt;
+	/**
+	 * The version of the last reset, which makes new blocks.
 	 */
-	private Map<Integer, Cube3D> blocks;
-	private final Set<ChangeListener> listeners = new HashSet<>();
+	private long resetAt;
+	/**
+	 * The version in which all blocks were last put in a new position.
+	 */
+	private long placedAt;
+	/**
+	 * Guards all changes of the state, see the class comment.
+	 */
+	private final StampedLock lock = new StampedLock();
+	private final Set<ChangeListener> listeners = new CopyOnWriteArraySet<>();
+
+	/**
+	 * The 3D geometry of all blocks, indexed by their number. Element 0 is unused.
+	 * This is null until someone asks for the blocks, usually the
+	 * {@link BlocksWorldPainter}. Without a painter the geometry is never made.
+	 * <p>
+	 * The geometry and the fields below are guarded by {@link #geometryLock}, not
+	 * by {@link #lock}.
+	 */
+	private Cube3D[] blocks;
+	/**
+	 * The state version that the geometry shows.
+	 */
+	private long geometryVersion;
+	private final Object geometryLock = new Object();
+	/**
+	 * Copy of the positions of the blocks that changed since
+	 * {@link #geometryVersion}, made by {@link #copyChanges()}.
+	 */
+	private int syncSize;
+	private long syncVersion;
+	private boolean syncNewBlocks;
+	private boolean syncAllBlocks;
+	private int syncCount;
+	private int[] syncBlocks = new int[0];
+	private int[] syncStacks = new int[0];
+	private int[] syncHeights = new int[0];
+
+	/**
+	 * Receives what a block is on.
+	 */
+	@FunctionalInterface
+	public interface OnConsumer {
+		/**
+		 * @param block the block number
+		 * @param on    number of the block it is on, 0 for the table.
+		 */
+		void accept(int block, int on);
+	}
+
+	/**
+	 * Blocks taken from {@link BlocksWorldModel#changedBlocks} and what they were
+	 * on at that time.
+	 */
+	private static final class TakenBlocks {
+		BitSet blocks = new BitSet();
+		int[] on = new int[0];
+	}
 
 	/**
 	 * make world with n blocks. * We have a virtual grid on which the stacks are
@@ -49,8 +176,57 @@ public class BlocksWorldModel {
 	}
 
 	/**
-	 * reset the model. New number of blocks. All blocks are made new and placed on
-	 * table. Observers are notified.
+	 * Create a model from an initial configuration in an array.
+	 *
+	 * @param start is initial config. see {@link #reset(int[])}.
+	 * @throws IllegalArgumentException if the configuration is not valid.
+	 */
+	public BlocksWorldModel(final int[] start) {
+		reset(start);
+	}
+
+	/**
+	 * Make a fork, see {@link #fork()}.
+	 *
+	 * @param parent the model to copy
+	 */
+	private BlocksWorldModel(final BlocksWorldModel parent) {
+		final long stamp = parent.lock.readLock();
+		try {
+			final int n = parent.size;
+			reset(n);
+			this.on = parent.on.clone();
+			this.above = parent.above.clone();
+			this.stackOf = parent.stackOf.clone();
+			this.height = parent.height.clone();
+			this.occupiedStacks = (BitSet) parent.occupiedStacks.clone();
+			this.lowestFreeStack = parent.lowestFreeStack;
+			this.hash = parent.hash;
+			this.changedBlocks.set(1, n + 1);
+			this.version++;
+		} finally {
+			parent.lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Make an independent copy of the world, for instance to try moves in a look
+	 * ahead. Only the state is copied: a handful of int arrays, no geometry and no
+	 * listeners. The fork behaves like a new model in the same configuration, with
+	 * the same table positions. Changing the fork does not affect this model and
+	 * the other way around.
+	 *
+	 * @return a new model in the current state of this one.
+	 */
+	public BlocksWorldModel fork() {
+		return new BlocksWorldModel(this);
+	}
+
+	/**
+	 * reset the model. New number of blocks. The table administration is cleared
+	 * and new blocks will be made for the geometry. The caller has to hold the
+	 * write lock, fill in the on, above, stackOf and height arrays and increase
+	 * the version. Observers are not notified.
 	 *
 	 * @param n
 	 */
@@ -58,12 +234,17 @@ public class BlocksWorldModel {
 		if (n <= 0) {
 			throw new IllegalArgumentException("size must be positive but got " + n);
 		}
-		this.blocks = new HashMap<>();
-		for (int i = 1; i <= n; i++) {
-			this.blocks.put(i, new Cube3D(i));
-		}
-		allBlocksToTable();
-		notifyChange();
+		this.size = n;
+		this.occupiedStacks = new BitSet(n + 1);
+		this.lowestFreeStack = 0;
+		this.changedBlocks = new BitSet(n + 1);
+		this.movedAt = new long[n + 1];
+		this.planOn = new int[n + 1];
+		this.planAbove = new int[n + 1];
+		this.planMark = new int[n + 1];
+		this.planGeneration = 0;
+		this.resetAt = this.version + 1;
+		this.placedAt = this.version + 1;
 	}
 
 	/**
@@ -84,60 +265,106 @@ public class BlocksWorldModel {
 	 * meaning there are 6 blocks; 1 is on the table, 2 on 5, 3 on 1, 4 on the
 	 * table, 5 on 4 and 6 on the table. <br>
 	 * This format matches the format used by Slaney.
+	 * <p>
+	 * The blocks are placed in a single pass over the stacks. Observers are
+	 * notified once.
 	 *
 	 * @param initialpositions
+	 * @throws IllegalArgumentException if the list is not a valid configuration.
 	 */
 	public void reset(final List<Integer> initialpositions) {
-		// note, both reset and all move() calls will notify renderer..
-		checkList(initialpositions);
-		reset(initialpositions.size());
-		/**
-		 * list with on-top-of numbers. Copy of initialpositions.
-		 * <p>
-		 * A well placed block is marked in the list by setting its value to 0.
-		 */
-		final List<Integer> placedBlocks = new ArrayList<>(initialpositions);
+		final int[] start = new int[initialpositions.size()];
+		for (int n = 0; n < start.length; n++) {
+			start[n] = initialpositions.get(n);
+		}
+		reset(start);
+	}
+
+	/**
+	 * Reset the model to a configuration in an array. Element n is the block that
+	 * block n+1 is on, as in {@link #reset(List)}. The array is not kept.
+	 *
+	 * @param start
+	 * @throws IllegalArgumentException if the array is not a valid configuration.
+	 */
+	public void reset(final int[] start) {
+		checkList(start);
+		final int n = start.length;
+		final int[] newOn = new int[n + 1];
+		final int[] newAbove = new int[n + 1];
+		for (int b = 1; b <= n; b++) {
+			final int pos = start[b - 1];
+			if (pos != 0) {
+				if (newAbove[pos] != 0) {
+					throw new IllegalArgumentException(
+							"blocks " + newAbove[pos] + " and " + b + " can not both be on block " + pos);
+				}
+				newAbove[pos] = b;
+			}
+			newOn[b] = pos;
+		}
 
 		/*
-		 * we iterate through the blocks and try to place them, until they are all
-		 * placed. after at most size+1 iterations all blocks must have been placed. We
-		 * keep track of progress to catch cycle problems which would result in infinite
-		 * loop if not detected.
+		 * Walk up each stack from its bottom block, which stays at the table position
+		 * with its own number. Every block has at most one block above it, so each
+		 * block is visited at most once. Blocks that are not reached from the table
+		 * are part of a loop.
 		 */
-		boolean blocksRemaining = true;
-		while (blocksRemaining) {
-			blocksRemaining = false;
-			boolean blocksMoved = false;
-			// try place block n
-			for (int n = 1; n <= placedBlocks.size(); n++) {
-				final int on = placedBlocks.get(n - 1);
-				if (on >= 1) { // on another block?
-					blocksRemaining = true;
-					if (placedBlocks.get(on - 1) == 0) {
-						// the block it has to be on is in position, go ahead
-						move(this.blocks.get(n), this.blocks.get(on));
-						placedBlocks.set(n - 1, 0);
-						blocksMoved = true;
-					}
+		final int[] newStackOf = new int[n + 1];
+		final int[] newHeight = new int[n + 1];
+		int placed = 0;
+		for (int bottom = 1; bottom <= n; bottom++) {
+			if (newOn[bottom] == 0) {
+				int h = 0;
+				for (int b = bottom; b != 0; b = newAbove[b]) {
+					newStackOf[b] = bottom;
+					newHeight[b] = h++;
+					placed++;
 				}
 			}
-			if (blocksRemaining && !blocksMoved) {
-				throw new IllegalArgumentException("Failed to place blocks in initial position, there must be a loop");
+		}
+		if (placed != n) {
+			throw new IllegalArgumentException("Failed to place blocks in initial position, there must be a loop");
+		}
+
+		long newHash = 0;
+		for (int b = 1; b <= n; b++) {
+			newHash ^= zobrist(b, newOn[b]);
+		}
+
+		final long stamp = this.lock.writeLock();
+		try {
+			reset(n);
+			this.hash = newHash;
+			this.on = newOn;
+			this.above = newAbove;
+			this.stackOf = newStackOf;
+			this.height = newHeight;
+			for (int b = 1; b <= n; b++) {
+				if (newOn[b] == 0) {
+					this.occupiedStacks.set(b);
+				}
 			}
+			this.lowestFreeStack = this.occupiedStacks.nextClearBit(0);
+			this.changedBlocks.set(1, n + 1);
+			this.version++;
+		} finally {
+			this.lock.unlockWrite(stamp);
 		}
+		notifyChange();
 	}
 
 	/**
 	 * Check that all numbers in the list are betweeen 0 and size(list). We do not
-	 * check for loops.
+	 * check for loops, that is done while placing the blocks.
 	 *
-	 * @param initialpositions
+	 * @param start
 	 * @throws IllegalArgumentException if some block is numbered incorrectly
 	 */
-	private void checkList(final List<Integer> initialpositions) {
-		final int size = initialpositions.size();
+	private void checkList(final int[] start) {
+		final int size = start.length;
 		for (int n = 0; n < size; n++) {
-			final int pos = initialpositions.get(n);
+			final int pos = start[n];
 			if (pos < 0) {
 				throw new IllegalArgumentException("block " + (n + 1) + " is supposed to be on negative block " + pos);
 			}
@@ -149,86 +376,605 @@ public class BlocksWorldModel {
 	}
 
 	/**
-	 * get block n
+	 * get block n. This makes the 3D geometry of the world if it was not there
+	 * yet, and brings it up to date with the state.
 	 *
 	 * @param n
 	 * @return
 	 */
 	public Cube3D get(final int n) {
-		return this.blocks.get(n);
+		synchronized (this.geometryLock) {
+			syncBlocks();
+			if (n <= 0 || n >= this.blocks.length) {
+				return null;
+			}
+			return this.blocks[n];
+		}
 	}
 
 	/**
-	 * get all blocks in the world.
+	 * get all blocks in the world. This makes the 3D geometry of the world if it
+	 * was not there yet, and brings it up to date with the state. The geometry
+	 * only changes in calls to this function and {@link #get(int)}, so a thread
+	 * painting the blocks that it got here sees a consistent world.
 	 *
 	 * @return all blocks in the world
 	 */
-	public Collection<Cube3D> getBlocks() {
-		return this.blocks.values();
+	public List<Cube3D> getBlocks() {
+		synchronized (this.geometryLock) {
+			syncBlocks();
+			return Collections.unmodifiableList(Arrays.asList(this.blocks).subList(1, this.blocks.length));
+		}
+	}
+
+	/**
+	 * @return true if the 3D geometry was made, see {@link #getBlocks()}.
+	 */
+	boolean hasGeometry() {
+		synchronized (this.geometryLock) {
+			return this.blocks != null;
+		}
+	}
+
+	/**
+	 * Bring the geometry up to date with the state. The caller has to hold the
+	 * {@link #geometryLock}.
+	 */
+	private void syncBlocks() {
+		if (this.blocks != null && this.geometryVersion == this.version) {
+			return;
+		}
+		long stamp = this.lock.tryOptimisticRead();
+		if (!copyChanges() || !this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				copyChanges();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+
+		if (this.syncNewBlocks) {
+			this.blocks = new Cube3D[this.syncSize + 1];
+			for (int n = 1; n <= this.syncSize; n++) {
+				this.blocks[n] = new Cube3D(n);
+			}
+		}
+		for (int i = 0; i < this.syncCount; i++) {
+			final Cube3D block = this.blocks[this.syncBlocks[i]];
+			if (this.syncAllBlocks) {
+				placeBlock(block, this.syncStacks[i], this.syncHeights[i]);
+			} else {
+				moveCube(block, this.syncStacks[i], this.syncHeights[i]);
+			}
+		}
+		this.geometryVersion = this.syncVersion;
+	}
+
+	/**
+	 * Copy the position of all blocks that changed since the geometry was last
+	 * brought up to date. This may run without lock, so the state can change
+	 * while copying. The caller has to validate the copy.
+	 *
+	 * @return false if the state changed so much that copying failed.
+	 */
+	private boolean copyChanges() {
+		final int n = this.size;
+		final int[] stacks = this.stackOf;
+		final int[] heights = this.height;
+		final long[] moved = this.movedAt;
+		if (stacks.length <= n || heights.length <= n || moved.length <= n) {
+			// a reset replaced the arrays while we were reading them.
+			return false;
+		}
+		final long since = this.geometryVersion;
+
+		this.syncVersion = this.version;
+		this.syncSize = n;
+		this.syncNewBlocks = this.blocks == null || this.resetAt > since;
+		this.syncAllBlocks = this.syncNewBlocks || this.placedAt > since;
+		if (this.syncBlocks.length < n) {
+			this.syncBlocks = new int[n];
+			this.syncStacks = new int[n];
+			this.syncHeights = new int[n];
+		}
+		int count = 0;
+		for (int b = 1; b <= n; b++) {
+			if (this.syncAllBlocks || moved[b] > since) {
+				this.syncBlocks[count] = b;
+				this.syncStacks[count] = stacks[b];
+				this.syncHeights[count] = heights[b];
+				count++;
+			}
+		}
+		this.syncCount = count;
+		return true;
+	}
+
+	/**
+	 * @return the number of blocks in the world.
+	 */
+	public int size() {
+		final long stamp = this.lock.tryOptimisticRead();
+		final int value = this.size;
+		if (this.lock.validate(stamp)) {
+			return value;
+		}
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.size;
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * get the block that block n is on.
+	 *
+	 * @param n the block number
+	 * @return number of the block that n is on, or 0 if n is on the table.
+	 */
+	public int getOn(final int n) {
+		final long stamp = this.lock.tryOptimisticRead();
+		final int[] array = this.on;
+		if (n >= 0 && n < array.length) {
+			final int value = array[n];
+			if (this.lock.validate(stamp)) {
+				return value;
+			}
+		}
+		// a writer got in between, or n is out of range.
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.on[n];
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * get the block that is on block n.
+	 *
+	 * @param n the block number
+	 * @return number of the block that is on n, or 0 if n is clear.
+	 */
+	public int getAbove(final int n) {
+		final long stamp = this.lock.tryOptimisticRead();
+		final int[] array = this.above;
+		if (n >= 0 && n < array.length) {
+			final int value = array[n];
+			if (this.lock.validate(stamp)) {
+				return value;
+			}
+		}
+		// a writer got in between, or n is out of range.
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.above[n];
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * check if block n is clear, ie there is no block on top of it.
+	 *
+	 * @param n the block number
+	 * @return true iff no block is on top of block n.
+	 */
+	public boolean isClear(final int n) {
+		return getAbove(n) == 0;
+	}
+
+	/**
+	 * get the height of block n in its stack.
+	 *
+	 * @param n the block number
+	 * @return number of blocks below block n. 0 if n is on the table.
+	 */
+	public int getHeight(final int n) {
+		final long stamp = this.lock.tryOptimisticRead();
+		final int[] array = this.height;
+		if (n >= 0 && n < array.length) {
+			final int value = array[n];
+			if (this.lock.validate(stamp)) {
+				return value;
+			}
+		}
+		// a writer got in between, or n is out of range.
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.height[n];
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * Get a consistent copy of the whole state.
+	 *
+	 * @return the state in the format of {@link #reset(List)}: element i is the
+	 *         block that block i+1 is on, 0 for the table.
+	 */
+	public int[] getState() {
+		long stamp = this.lock.tryOptimisticRead();
+		int[] state = copyState();
+		if (state == null || !this.lock.validate(stamp)) {
+			stamp = this.lock.readLock();
+			try {
+				state = copyState();
+			} finally {
+				this.lock.unlockRead(stamp);
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * Copy the on relation, see {@link #getState()}. May run without lock.
+	 *
+	 * @return copy of the state, or null if a reset got in between.
+	 */
+	private int[] copyState() {
+		final int n = this.size;
+		final int[] onCopy = this.on;
+		if (onCopy.length != n + 1) {
+			return null;
+		}
+		return Arrays.copyOfRange(onCopy, 1, n + 1);
+	}
+
+	/**
+	 * get the block that given block rests on.
+	 *
+	 * @param block the block
+	 * @return the block that the given block is on, or null if it is on the table.
+	 */
+	public Cube3D getOnBlock(final Cube3D block) {
+		return get(getOn(block.getNumber()));
+	}
+
+	/**
+	 * check if given block is clear, ie there is no block on top of it.
+	 *
+	 * @param block the block
+	 * @return true iff no block is on top of the block.
+	 */
+	public boolean isClear(final Cube3D block) {
+		return isClear(block.getNumber());
 	}
 
 	/**
 	 * Put all blocks to the table.
 	 */
 	public void allBlocksToTable() {
-		for (final Cube3D block : this.blocks.values()) { // Create the random blocks
-			block.reset();
-			final float sfTheta = (float) Math.random() * 10;
-			final RHMatrix3DY hmRMY = new RHMatrix3DY(sfTheta);
-			block.transform(hmRMY); // Rotate the block about its center
-									// vertical axis
-			block.transform(new THMatrix3D(getTablePosition(block.getNumber())));
+		final long stamp = this.lock.writeLock();
+		try {
+			this.occupiedStacks.clear();
+			this.occupiedStacks.set(1, this.size + 1);
+			this.lowestFreeStack = 0;
+			this.hash = 0;
+			for (int n = 1; n <= this.size; n++) {
+				this.hash ^= zobrist(n, 0);
+				this.on[n] = 0;
+				this.above[n] = 0;
+				this.stackOf[n] = n;
+				this.height[n] = 0;
+			}
+			this.changedBlocks.set(1, this.size + 1);
+			this.placedAt = this.version + 1;
+			this.version++;
+		} finally {
+			this.lock.unlockWrite(stamp);
 		}
 		notifyChange();
 	}
 
+	/**
+	 * Give a cube a fresh random orientation and put it at the given stack and
+	 * height.
+	 *
+	 * @param block  the cube
+	 * @param stack  the stack number
+	 * @param height the number of blocks below the cube
+	 */
+	private void placeBlock(final Cube3D block, final int stack, final int height) {
+		block.reset();
+		final float sfTheta = (float) Math.random() * 10;
+		final RHMatrix3DY hmRMY = new RHMatrix3DY(sfTheta);
+		block.transform(hmRMY); // Rotate the block about its center
+								// vertical axis
+		final Point3D pos = getTablePosition(stack);
+		pos.setY(-100 * height); // -Y is up
+		block.transform(new THMatrix3D(pos));
+	}
+
 	/**
 	 * Move src block on top of dest block or to table.
 	 *
-	 * @param source
-	 * @param dest   cube. Use null to move block to table.
+	 * @param iSourceBlock the cube to move
+	 * @param iDestBlock   cube. Use null to move block to table.
 	 */
 	public void move(final Cube3D iSourceBlock, final Cube3D iDestBlock) {
-		Point3D TempPoint;
-		THMatrix3D TM = null; // Translation matrix for making the block jump
+		move(iSourceBlock.getNumber(), iDestBlock == null ? 0 : iDestBlock.getNumber());
+	}
+
+	/**
+	 * Move block src on top of block dest or to table.
+	 *
+	 * @param src  number of the block to move
+	 * @param dest number of the block to move src on. Use 0 to move block to
+	 *             table.
+	 * @throws IllegalArgumentException if the move is not possible.
+	 */
+	public void move(final int src, final int dest) {
+		final long stamp = this.lock.writeLock();
+		try {
+			checkMove(src, dest);
+			if (this.above[src] != 0) {
+				throw new IllegalArgumentException("block is not on top");
+			}
+			if (dest != 0 && this.above[dest] != 0) {
+				throw new IllegalArgumentException("target is not on top");
+			}
+			doMove(src, dest);
+			this.version++;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		notifyChange();
+	}
+
+	/**
+	 * Execute a sequence of moves as one step. The whole sequence is checked
+	 * before any block is moved, so either all moves are done or none. Observers
+	 * are notified once.
+	 *
+	 * @param src  numbers of the blocks to move, in order.
+	 * @param dest for each move, the number of the block to move on, or 0 for the
+	 *             table.
+	 * @throws IllegalArgumentException if some move in the sequence is not
+	 *                                  possible.
+	 */
+	public void move(final int[] src, final int[] dest) {
+		if (src.length != dest.length) {
+			throw new IllegalArgumentException(
+					"got " + src.length + " blocks to move but " + dest.length + " targets");
+		}
+
+		if (src.length == 0) {
+			return;
+		}
+
+		final long stamp = this.lock.writeLock();
+		try {
+			/*
+			 * Simulate the moves on the changed part of the on and above relation. Plans
+			 * are short compared to the world, so we do not copy the whole state: a new
+			 * generation makes all earlier plan entries stale.
+			 */
+			if (++this.planGeneration == 0) {
+				Arrays.fill(this.planMark, 0);
+				this.planGeneration = 1;
+			}
+			for (int i = 0; i < src.length; i++) {
+				final int s = src[i];
+				final int d = dest[i];
+				try {
+					checkMove(s, d);
+					planTouch(s);
+					planTouch(d);
+					if (this.planAbove[s] != 0) {
+						throw new IllegalArgumentException("block is not on top");
+					}
+					if (d != 0 && this.planAbove[d] != 0) {
+						throw new IllegalArgumentException("target is not on top");
+					}
+				} catch (final IllegalArgumentException e) {
+					throw new IllegalArgumentException("move " + (i + 1) + " of " + src.length + " (" + s + " to "
+							+ d + ") is not possible: " + e.getMessage(), e);
+				}
+				final int from = this.planOn[s];
+				planTouch(from);
+				this.planAbove[from] = 0;
+				this.planAbove[d] = s;
+				this.planOn[s] = d;
+			}
+
+			for (int i = 0; i < src.length; i++) {
+				doMove(src[i], dest[i]);
+			}
+			this.version++;
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
+		notifyChange();
+	}
 
-		if (!iSourceBlock.topBlock()) {
-			throw new IllegalArgumentException("block is not on top");
+	/**
+	 * Make the plan entries of a block current, copying them from the state if
+	 * this plan did not touch the block yet.
+	 *
+	 * @param n the block number, or 0 for the table
+	 */
+	private void planTouch(final int n) {
+		if (this.planMark[n] != this.planGeneration) {
+			this.planMark[n] = this.planGeneration;
+			this.planOn[n] = this.on[n];
+			this.planAbove[n] = this.above[n];
+		}
+	}
+
+	/**
+	 * Check that the blocks of a move exist and are different. Whether they are
+	 * clear is not checked.
+	 *
+	 * @param src  number of the block to move
+	 * @param dest number of the target block, or 0 for the table
+	 * @throws IllegalArgumentException if the move is not possible.
+	 */
+	private void checkMove(final int src, final int dest) {
+		if (src <= 0 || src > this.size) {
+			throw new IllegalArgumentException("unknown block " + src);
+		}
+		if (dest < 0 || dest > this.size) {
+			throw new IllegalArgumentException("unknown target block " + dest);
+		}
+		if (dest == src) {
+			throw new IllegalArgumentException("block can not be moved on top of itself");
 		}
+	}
 
-		if (iDestBlock == null) {
+	/**
+	 * Move block src on top of block dest or to table. The move must have been
+	 * checked, and the caller must hold the write lock and increase the version.
+	 * Does not notify.
+	 *
+	 * @param src  number of the block to move
+	 * @param dest number of the block to move src on, or 0 for the table.
+	 */
+	private void doMove(final int src, final int dest) {
+		this.hash ^= zobrist(src, this.on[src]) ^ zobrist(src, dest);
+		if (dest == 0) {
 			// move to floor
-			final Point3D freetablepos = getTablePosition(getFreeStackNumber());
-			if (iSourceBlock.getOnBlock() != null) {
-				// The block it was sitting on is now free to move:
-				iSourceBlock.getOnBlock().setTopBlock(true);
+			final int stack = this.lowestFreeStack;
+			occupyStack(stack);
+			if (this.on[src] == 0) {
+				releaseStack(this.stackOf[src]);
 			}
-			iSourceBlock.reset();
-			iSourceBlock.transform(new THMatrix3D(freetablepos));
+			// The block it was sitting on is now free to move:
+			this.above[this.on[src]] = 0;
+			this.on[src] = 0;
+			this.stackOf[src] = stack;
+			this.height[src] = 0;
 		} else {
-			if (!iDestBlock.topBlock()) {
-				throw new IllegalArgumentException("target is not on top");
+			if (this.on[src] == 0) {
+				releaseStack(this.stackOf[src]);
 			}
-			// move on top of another block. This part is original code....
-			// Compute the translation transform for stacking the block:
-			// -Y is up
-			TempPoint = new Point3D(iDestBlock.getCenterPoint().getX() - iSourceBlock.getCenterPoint().getX(),
-					iDestBlock.getCenterPoint().getY() - iSourceBlock.getCenterPoint().getY() - 100,
-					iDestBlock.getCenterPoint().getZ() - iSourceBlock.getCenterPoint().getZ());
-			TM = new THMatrix3D(TempPoint);
-			iSourceBlock.transform(TM);
+			// The block it was sitting on is now free to move:
+			this.above[this.on[src]] = 0;
 			// The block it moves to now can't move
-			iDestBlock.setTopBlock(false);
+			this.above[dest] = src;
+			this.on[src] = dest;
+			this.stackOf[src] = this.stackOf[dest];
+			this.height[src] = this.height[dest] + 1;
+		}
+		this.above[0] = 0; // the table is never covered
+		this.changedBlocks.set(src);
+		this.movedAt[src] = this.version + 1;
+	}
+
+	/**
+	 * Move a cube to a new position. A cube moved to the table loses its
+	 * rotation, a cube stacked on another block keeps it.
+	 *
+	 * @param block  the cube
+	 * @param stack  the stack number
+	 * @param height the number of blocks below the cube
+	 */
+	private void moveCube(final Cube3D block, final int stack, final int height) {
+		final Point3D pos = getTablePosition(stack);
+		if (height == 0) {
+			block.reset();
+			block.transform(new THMatrix3D(pos));
+		} else {
+			pos.setY(-50 - 100 * height); // -Y is up
+			block.moveTo(pos);
+		}
+	}
+
+	/**
+	 * get the state version. The version increases with every move and reset, so
+	 * if the version did not change, the state did not change either.
+	 *
+	 * @return the current state version.
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * Get the Zobrist hash of the state. Equal states have equal hashes, also in
+	 * different models and runs, so the hash can be used to recognise states seen
+	 * before. It is kept up to date with every move, so this does not look at the
+	 * blocks.
+	 *
+	 * @return the xor of {@link #zobrist(int, int)} over all blocks and what they
+	 *         are on.
+	 */
+	public long getStateHash() {
+		final long stamp = this.lock.tryOptimisticRead();
+		final long value = this.hash;
+		if (this.lock.validate(stamp)) {
+			return value;
+		}
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.hash;
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
+
+	/**
+	 * The Zobrist key for block n being on block on. The keys are fixed, so a
+	 * planner can update the hash of a state it simulates: moving block n from a
+	 * to b changes the hash by zobrist(n, a) ^ zobrist(n, b).
+	 *
+	 * @param n  the block number
+	 * @param on the block that n is on, 0 for the table.
+	 * @return a random-looking 64-bit key, different for every pair.
+	 */
+	public static long zobrist(final int n, final int on) {
+		long z = (((long) n << 32) | on) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
 
-			if (iSourceBlock.getOnBlock() != null) {
-				// The block it was sitting on is now free to move:
-				iSourceBlock.getOnBlock().setTopBlock(true);
+	/**
+	 * Report the blocks that changed what they are on since the previous call, and
+	 * forget them. After a reset all blocks are reported. There is one set of
+	 * changed blocks per model, so there should be only one caller of this.
+	 * <p>
+	 * The model is only locked to take the changed blocks and copy what they are
+	 * on. The consumer is called after that, so it sees a consistent state and
+	 * does not hold up moves; it may call the model.
+	 *
+	 * @param consumer is called with the number of each changed block, in
+	 *                 increasing order, and what it is on now.
+	 * @return the number of blocks in the world.
+	 */
+	public int takeChangedBlocks(final OnConsumer consumer) {
+		TakenBlocks taken = this.spareBlocks;
+		this.spareBlocks = null;
+		if (taken == null) {
+			taken = new TakenBlocks();
+		}
+		final int n;
+		final long stamp = this.lock.writeLock();
+		try {
+			n = this.size;
+			final BitSet changed = this.changedBlocks;
+			this.changedBlocks = taken.blocks;
+			taken.blocks = changed;
+			if (taken.on.length <= n) {
+				taken.on = new int[n + 1];
 			}
+			for (int b = changed.nextSetBit(0); b >= 0; b = changed.nextSetBit(b + 1)) {
+				taken.on[b] = this.on[b];
+			}
+		} finally {
+			this.lock.unlockWrite(stamp);
+		}
 
-			// Block knows what block it sits on so it can free it later if it moves
-			iSourceBlock.setOnBlock(iDestBlock);
+		final BitSet blocks = taken.blocks;
+		for (int b = blocks.nextSetBit(0); b >= 0; b = blocks.nextSetBit(b + 1)) {
+			consumer.accept(b, taken.on[b]);
 		}
-		notifyChange();
+		blocks.clear();
+		this.spareBlocks = taken;
+		return n;
 	}
 
 	/**
@@ -248,13 +994,31 @@ public class BlocksWorldModel {
 	 * @return stack number for given cube. Stack 0 is front left.
 	 */
 	public int getStackNumber(final Cube3D cube) {
-		final Point3D center = cube.getCenterPoint();
-		final int nx = (int) (((center.getX() - X0) + 1) / D); // +1 for rounding
-		final int nz = (int) ((Z0 - center.getZ() + 1) / D);
-		if (nx < 0 || nz < 0) {
-			throw new IllegalArgumentException("cube " + cube + " is outside the grid at (" + nx + "," + nz + ")");
+		return getStackNumber(cube.getNumber());
+	}
+
+	/**
+	 * This function gets you the stack number for block n.
+	 *
+	 * @param n the block number
+	 * @return stack number for given block. Stack 0 is front left.
+	 */
+	public int getStackNumber(final int n) {
+		final long stamp = this.lock.tryOptimisticRead();
+		final int[] array = this.stackOf;
+		if (n >= 0 && n < array.length) {
+			final int value = array[n];
+			if (this.lock.validate(stamp)) {
+				return value;
+			}
+		}
+		// a writer got in between, or n is out of range.
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.stackOf[n];
+		} finally {
+			this.lock.unlockRead(readStamp);
 		}
-		return nz * PER_ROW + nx;
 	}
 
 	/**
@@ -276,31 +1040,47 @@ public class BlocksWorldModel {
 	 * @return stack number
 	 */
 	public int getFreeStackNumber() {
-		final List<Boolean> free = new LinkedList<>();
-
 		/*
-		 * all places are free until we find a stack there. we have a list one longer
-		 * than the number of blocks, because occasionally (see last line of this
-		 * function) we return the overflow position.
+		 * There are n+1 positions for n blocks, so there is always a free one: at most
+		 * n stacks exist, even counting the stack of a block that is about to leave
+		 * its position.
 		 */
-		for (int n = 0; n <= this.blocks.size(); n++) {
-			free.add(true);
+		final long stamp = this.lock.tryOptimisticRead();
+		final int value = this.lowestFreeStack;
+		if (this.lock.validate(stamp)) {
+			return value;
 		}
+		final long readStamp = this.lock.readLock();
+		try {
+			return this.lowestFreeStack;
+		} finally {
+			this.lock.unlockRead(readStamp);
+		}
+	}
 
-		// check all stacks
-		for (final Cube3D block : this.blocks.values()) {
-			free.set(getStackNumber(block), false);
+	/**
+	 * Mark stack number as occupied, and move the lowest free stack number up if
+	 * needed. The caller must hold the write lock.
+	 *
+	 * @param stack the stack number that now has a stack on it.
+	 */
+	private void occupyStack(final int stack) {
+		this.occupiedStacks.set(stack);
+		if (stack == this.lowestFreeStack) {
+			this.lowestFreeStack = this.occupiedStacks.nextClearBit(stack + 1);
 		}
+	}
 
-		// finally, find first free stack
-		for (int n = 0; n < this.blocks.size(); n++) {
-			if (free.get(n)) {
-				return n;
-			}
+	/**
+	 * Mark stack number as free again. The caller must hold the write lock.
+	 *
+	 * @param stack the stack number that no longer has a stack on it.
+	 */
+	private void releaseStack(final int stack) {
+		this.occupiedStacks.clear(stack);
+		if (stack < this.lowestFreeStack) {
+			this.lowestFreeStack = stack;
 		}
-		// there is always a place after the last block, if we always
-		// use the first free position if there is one.
-		return this.blocks.size();
 	}
 
 	/**
@@ -28,9 +28,6 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.List;
-
 import javax.swing.SwingUtilities;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -113,6 +110,25 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 	// Offscreen graphics for double buffering
 	private Graphics grOffScreen = null;
 	private final BlocksWorldModel world;
+	private final WorldRenderer renderer;
+	/**
+	 * Decides when changes of the model are painted.
+	 */
+	private final RenderScheduler scheduler;
+	/**
+	 * How far in pixels this window is right of and below the saved window
+	 * position.
+	 */
+	private final int windowOffset;
+	/**
+	 * The default maximum number of frames per second.
+	 */
+	public static final int DEFAULT_FPS = 60;
+	/**
+	 * How far in pixels each next window opens right of and below the previous
+	 * one.
+	 */
+	private static final int WINDOW_OFFSET = 30;
 
 	/**
 	 * To allow browsers to get information about the applet:
@@ -128,10 +144,53 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 	}
 
 	public BlocksWorldPainter(final BlocksWorldModel model) {
+		this(model, DEFAULT_FPS, false);
+	}
+
+	/**
+	 * @param model the world to show
+	 * @param fps   the maximum number of frames per second
+	 * @param idle  true to only paint changes when the model stopped changing,
+	 *              see {@link RenderScheduler}.
+	 */
+	public BlocksWorldPainter(final BlocksWorldModel model, final int fps, final boolean idle) {
+		this(model, new BlocksWorldRenderer(model), fps, idle);
+	}
+
+	/**
+	 * @param model    the world to show
+	 * @param renderer draws the world
+	 * @param fps      the maximum number of frames per second
+	 * @param idle     true to only paint changes when the model stopped
+	 *                 changing, see {@link RenderScheduler}.
+	 */
+	public BlocksWorldPainter(final BlocksWorldModel model, final WorldRenderer renderer, final int fps,
+			final boolean idle) {
+		this(model, renderer, fps, idle, "Blocks World", 0);
+	}
+
+	/**
+	 * @param model    the world to show
+	 * @param renderer draws the world
+	 * @param fps      the maximum number of frames per second
+	 * @param idle     true to only paint changes when the model stopped
+	 *                 changing, see {@link RenderScheduler}.
+	 * @param title    the window title
+	 * @param index    the number of the window, from 0. Window n opens n *
+	 *                 {@value #WINDOW_OFFSET} pixels right of and below the
+	 *                 saved window position, so the windows of several worlds do
+	 *                 not cover each other.
+	 */
+	public BlocksWorldPainter(final BlocksWorldModel model, final WorldRenderer renderer, final int fps,
+			final boolean idle, final String title, final int index) {
 		this.world = model;
+		this.renderer = renderer;
+		this.scheduler = new RenderScheduler(this::repaint, fps, idle);
+		this.windowOffset = index * WINDOW_OFFSET;
+		setTitle(title);
 		setMinimumSize(new Dimension(320, 200));
 		setSize(new Dimension(BlocksWorldSettings.getWidth(), BlocksWorldSettings.getHeight()));
-		setLocation(BlocksWorldSettings.getX(), BlocksWorldSettings.getY());
+		setLocation(BlocksWorldSettings.getX() + this.windowOffset, BlocksWorldSettings.getY() + this.windowOffset);
 		init();
 		setVisible(true);
 		start();
@@ -173,7 +232,9 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 	}
 
 	private void saveWindowDimensions() {
-		BlocksWorldSettings.setWindowParams(getX(), getY(), getWidth(), getHeight());
+		// save where the first window would be.
+		BlocksWorldSettings.setWindowParams(getX() - this.windowOffset, getY() - this.windowOffset, getWidth(),
+				getHeight());
 	}
 
 	/**
@@ -215,62 +276,7 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 	 */
 	@Override
 	public void paint(final Graphics g) {
-		// Code for displaying images or drawing in the applet frame
-		int i;
-		int j;
-		float sfDSQi;
-		float sfDSQj;
-		Point3D vp;
-		final int width = getWidth();
-		final int height = getHeight();
-		// Make a copy of the blocks array for painting
-		final List<Cube3D> blockCopy = new ArrayList<>(this.world.getBlocks());
-
-		g.clearRect(0, 0, width, height);
-
-		// Opposite viewpoint
-		vp = new Point3D(-this.ViewPoint.getX(), -this.ViewPoint.getY(), -this.ViewPoint.getZ());
-
-		/**
-		 * Painter's algorithm. Works with BlocksWorld where all the faces are the same
-		 * size. Not generally correct. Z-buffer algorithm is used with most low level
-		 * 3D graphics libraries. Sort the copies of the blocks on distance from the
-		 * view point:
-		 */
-		// FIXME There is built-in support for sorting in Java.
-		// FIXME cleanup this using straight iterator?
-		// This fixed loop bubble sort is good enough for blocks world.
-		for (i = 1; i <= blockCopy.size() - 1; i++) {
-			for (j = i + 1; j <= blockCopy.size(); j++) {
-				// Put most distant first:
-				// Distance from the block to the viewpoint
-				sfDSQi = blockCopy.get(i - 1).getDSquared(vp);
-				sfDSQj = blockCopy.get(j - 1).getDSquared(vp);
-				if (sfDSQj > sfDSQi) {
-					// swap i and j
-					final Cube3D swap = blockCopy.get(i - 1);
-					blockCopy.set(i - 1, blockCopy.get(j - 1));
-					blockCopy.set(j - 1, swap);
-				}
-			}
-		}
-
-		/*
-		 * Have the copies of the blocks paint themselves.
-		 */
-		for (final Cube3D block : blockCopy) {
-			block.paint(g, this.hmPerspXform, vp, getFocalLength(), width, height);
-		}
-
-		// Draw a recessed frame around the applet border. Designed for
-		// gray-on-gray browser background.
-		g.setColor(Color.black);
-		g.drawLine(0, 0, width - 1, 0);
-		g.drawLine(0, 0, 0, height - 1);
-		g.setColor(Color.white);
-		g.drawLine(0, height - 1, width - 1, height - 1);
-		g.drawLine(width - 1, 1, width - 1, height - 1);
-
+		this.renderer.paint(g, this.hmPerspXform, this.ViewPoint, getFocalLength(), getWidth(), getHeight());
 	}
 
 	@Override
@@ -331,7 +337,7 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 			return false;
 		}
 
-		if (iClosestBlock.topBlock()) {
+		if (this.world.isClear(iClosestBlock)) {
 			if (this.bSelectedDest && iClosestBlock == this.iSourceBlock) {
 				showStatus("Block " + BWEnvironment.blockName(iClosestBlock) + " cannot be stacked on top of itself.");
 			} else {
@@ -471,51 +477,23 @@ public class BlocksWorldPainter extends Frame implements ChangeListener {
 	 * initialize the perspective transformation
 	 */
 	public void SetupPerspXform() {
-		HMatrix3D hmXform; // Transform matrix
-		RHMatrix3DX hmRMX; // Rotation transform matrices
-		RHMatrix3DY hmRMY;
-		RHMatrix3DZ hmRMZ;
-		HMatrix3D hmXformR; // Compound rotation matrix
-
 		final float vx = this.sfXPosition;
 		final float vy = 1000 * this.sfPositionFactor + this.sfYPosition;
 		final float vz = -1732 * this.sfPositionFactor;
 		// The point in world space the viewer is seeing from
 		this.ViewPoint = new Point3D(vx, vy, vz);
 
-		// Set up the perspective transform:
-		this.hmPerspXform = new HMatrix3D();
-		this.hmPerspXform.setElement(4, 3, 1 / getFocalLength());
-		this.hmPerspXform.setElement(4, 4, 0);
-
-		// Rotate the view direction:
-		// Rotation of viewpoint about X in degrees
-		hmRMX = new RHMatrix3DX(-30 + this.sfPanX);
-		// Rotation of viewpoint about Y in degrees
-		hmRMY = new RHMatrix3DY(this.sfPanY);
-		// Rotation of viewpoint about Z in degrees
-		hmRMZ = new RHMatrix3DZ(0);
-		// Compound rotation
-		hmXformR = hmRMX.multiply(hmRMZ, hmRMX);
-		// Compound rotation
-		hmXformR = hmRMY.multiply(hmXformR, hmRMY);
-
-		// Transform the view:
-		// Translation matrix constructed from the view point
-		hmXform = new THMatrix3D(this.ViewPoint);
-		// Multiply the rot. matrix by the trans. matrix
-		hmXform = hmXform.multiply(hmXformR, hmXform);
-
-		// Postmultiply the perspective matrix by the view transformation
-		this.hmPerspXform = hmXform.multiply(this.hmPerspXform, hmXform);
+		this.hmPerspXform = BlocksWorldRenderer.makePerspXform(this.ViewPoint, getFocalLength(), this.sfPanX,
+				this.sfPanY);
 	} // End of SetupPerspXform()
 
 	/**
-	 * IMPLEMENTS CHANGELISTENER
+	 * IMPLEMENTS CHANGELISTENER. Only asks the scheduler for a frame, so many
+	 * changes in a short time give one repaint.
 	 */
 	@Override
 	public void stateChanged(final ChangeEvent e) {
-		SwingUtilities.invokeLater(this::repaint);
+		this.scheduler.request();
 	}
 
 	/**
@@ -0,0 +1,233 @@
+package environment;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Draws the blocks of a {@link BlocksWorldModel} on a {@link Graphics}. This
+ * is the drawing part of the {@link BlocksWorldPainter}, without the window,
+ * so that the world can also be drawn offscreen, eg into an image.
+ * <p>
+ * The painting order of the blocks is kept from frame to frame. A renderer
+ * should only be used by one thread at a time.
+ */
+public class BlocksWorldRenderer implements WorldRenderer {
+	/**
+	 * Above this number of moved blocks, all blocks are sorted again.
+	 */
+	private static final int MAX_MOVED = 32;
+
+	private final BlocksWorldModel world;
+	/**
+	 * The view of the last frame, kept until the camera, zoom or size changes.
+	 */
+	private ViewProjection view;
+	/**
+	 * The opposite of the viewpoint of the last frame.
+	 */
+	private final Point3D vp = new Point3D();
+	/**
+	 * The blocks in painting order, as of the last frame: count is the number of
+	 * blocks, depth[i] the squared distance of block i+1 to the viewpoint and
+	 * order the indices of the blocks, most distant first. The other arrays are
+	 * working storage for sorting.
+	 */
+	private int count = -1;
+	private float[] depth;
+	private int[] order;
+	private long[] keys;
+	private boolean[] moved;
+	private int[] movedBlocks;
+
+	/**
+	 * @param model the world to draw.
+	 */
+	public BlocksWorldRenderer(final BlocksWorldModel model) {
+		this.world = model;
+	}
+
+	/**
+	 * Make the perspective transformation for a viewer.
+	 *
+	 * @param viewPoint   the point in world space the viewer is seeing from
+	 * @param focalLength the focal length
+	 * @param panX        rotation of the view about X in degrees, on top of the
+	 *                    standard -30 degrees.
+	 * @param panY        rotation of the view about Y in degrees
+	 * @return the perspective transformation.
+	 */
+	public static HMatrix3D makePerspXform(final Point3D viewPoint, final float focalLength, final float panX,
+			final float panY) {
+		HMatrix3D hmXform; // Transform matrix
+		RHMatrix3DX hmRMX; // Rotation transform matrices
+		RHMatrix3DY hmRMY;
+		RHMatrix3DZ hmRMZ;
+		HMatrix3D hmXformR; // Compound rotation matrix
+
+		// Set up the perspective transform:
+		final HMatrix3D hmPerspXform = new HMatrix3D();
+		hmPerspXform.setElement(4, 3, 1 / focalLength);
+		hmPerspXform.setElement(4, 4, 0);
+
+		// Rotate the view direction:
+		// Rotation of viewpoint about X in degrees
+		hmRMX = new RHMatrix3DX(-30 + panX);
+		// Rotation of viewpoint about Y in degrees
+		hmRMY = new RHMatrix3DY(panY);
+		// Rotation of viewpoint about Z in degrees
+		hmRMZ = new RHMatrix3DZ(0);
+		// Compound rotation
+		hmXformR = hmRMX.multiply(hmRMZ, hmRMX);
+		// Compound rotation
+		hmXformR = hmRMY.multiply(hmXformR, hmRMY);
+
+		// Transform the view:
+		// Translation matrix constructed from the view point
+		hmXform = new THMatrix3D(viewPoint);
+		// Multiply the rot. matrix by the trans. matrix
+		hmXform = hmXform.multiply(hmXformR, hmXform);
+
+		// Postmultiply the perspective matrix by the view transformation
+		return hmXform.multiply(hmPerspXform, hmXform);
+	}
+
+	@Override
+	public void paint(final Graphics g, final HMatrix3D perspXform, final Point3D viewPoint, final float focalLength,
+			final int width, final int height) {
+		final List<Cube3D> blocks = this.world.getBlocks();
+
+		g.clearRect(0, 0, width, height);
+
+		// Opposite viewpoint
+		this.vp.setX(-viewPoint.getX());
+		this.vp.setY(-viewPoint.getY());
+		this.vp.setZ(-viewPoint.getZ());
+
+		/**
+		 * Painter's algorithm. Works with BlocksWorld where all the faces are the same
+		 * size. Not generally correct. Z-buffer algorithm is used with most low level
+		 * 3D graphics libraries. Sort the blocks on distance from the view point, most
+		 * distant first.
+		 */
+		sortBlocks(blocks);
+
+		if (this.view == null || !this.view.isFor(perspXform, focalLength, width, height)) {
+			this.view = new ViewProjection(perspXform, focalLength, width, height);
+		}
+		/*
+		 * Have the blocks paint themselves. Blocks outside the view skip
+		 * themselves.
+		 */
+		for (int i = 0; i < this.count; i++) {
+			blocks.get(this.order[i]).paint(g, this.view, this.vp);
+		}
+
+		paintBorder(g, width, height);
+	}
+
+	/**
+	 * Draw a recessed frame around the applet border. Designed for gray-on-gray
+	 * browser background.
+	 */
+	static void paintBorder(final Graphics g, final int width, final int height) {
+		g.setColor(Color.black);
+		g.drawLine(0, 0, width - 1, 0);
+		g.drawLine(0, 0, 0, height - 1);
+		g.setColor(Color.white);
+		g.drawLine(0, height - 1, width - 1, height - 1);
+		g.drawLine(width - 1, 1, width - 1, height - 1);
+	}
+
+	/**
+	 * Bring {@link #order} up to date with the depths of the blocks. The depths
+	 * are computed once per frame. If none changed (the camera and the blocks
+	 * stood still) the order is kept; if a few blocks moved only those are put in
+	 * their new place; otherwise all blocks are sorted again.
+	 *
+	 * @param blocks the blocks to paint
+	 */
+	private void sortBlocks(final List<Cube3D> blocks) {
+		final int n = blocks.size();
+		if (n != this.count) {
+			this.count = n;
+			this.depth = new float[n];
+			this.order = new int[n];
+			this.keys = new long[n];
+			this.moved = new boolean[n];
+			this.movedBlocks = new int[MAX_MOVED];
+			for (int i = 0; i < n; i++) {
+				this.depth[i] = blocks.get(i).getDSquared(this.vp);
+			}
+			sortAll();
+			return;
+		}
+
+		int changed = 0;
+		for (int i = 0; i < n; i++) {
+			final float d = blocks.get(i).getDSquared(this.vp);
+			if (d != this.depth[i]) {
+				this.depth[i] = d;
+				if (changed < MAX_MOVED) {
+					this.movedBlocks[changed] = i;
+				}
+				changed++;
+			}
+		}
+		if (changed == 0) {
+			return;
+		}
+		if (changed > MAX_MOVED) {
+			sortAll();
+			return;
+		}
+
+		// Take the moved blocks out; the others are still in order.
+		for (int k = 0; k < changed; k++) {
+			this.moved[this.movedBlocks[k]] = true;
+		}
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			final int b = this.order[i];
+			if (!this.moved[b]) {
+				this.order[m++] = b;
+			}
+		}
+		// and put them back in their new place.
+		for (int k = 0; k < changed; k++) {
+			final int b = this.movedBlocks[k];
+			this.moved[b] = false;
+			final float d = this.depth[b];
+			int lo = 0;
+			int hi = m;
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (this.depth[this.order[mid]] >= d) {
+					lo = mid + 1;
+				} else {
+					hi = mid;
+				}
+			}
+			System.arraycopy(this.order, lo, this.order, lo + 1, m - lo);
+			this.order[lo] = b;
+			m++;
+		}
+	}
+
+	/**
+	 * Sort all blocks on {@link #depth}, most distant first. The depth is never
+	 * negative, so its float bits sort like the float itself; with the index in
+	 * the low bits a plain sort of longs does the job.
+	 */
+	private void sortAll() {
+		final int n = this.count;
+		for (int i = 0; i < n; i++) {
+			this.keys[i] = ((long) Float.floatToIntBits(this.depth[i]) << 32) | i;
+		}
+		Arrays.sort(this.keys, 0, n);
+		for (int i = 0; i < n; i++) {
+			this.order[i] = (int) this.keys[n - 1 - i];
+		}
+	}
+}
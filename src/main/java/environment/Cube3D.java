@@ -19,12 +19,17 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.FontMetrics;
 import java.awt.Graphics;
-import java.awt.Polygon;
 
 /**
  * The cube class is built of 6 squares (a surface model), by default with its
  * bottom face on the X-Z plane. The cube has a paint() method for painting
  * itself.
+ * <p>
+ * A cube is not locked. Its geometry is only changed by the
+ * {@link BlocksWorldModel} when blocks are asked for, see
+ * {@link BlocksWorldModel#getBlocks()}, so the thread that asks for the blocks
+ * and paints them (normally the event dispatch thread) has no concurrent
+ * writer.
  */
 public class Cube3D {
 	// Face array
@@ -33,13 +38,41 @@ public class Cube3D {
 	private Point3D centerPoint;
 	// The block knows its own color
 	private Color BlockColor = Color.getHSBColor((float) Math.random(), (float) Math.random(), 1f);
-	// Not any blocks on top of it, true by default
-	private boolean bTopBlock;
-	// Index of the block this one rests on, null by default
-	private Cube3D iOnBlock;
+	private Color selectedColor;
 	private boolean selected;
 	private int blockNumber;
 	private Point3D frontFaceCenter;
+	/**
+	 * The label with the block number, and its width in the font metrics it was
+	 * last drawn with.
+	 */
+	private String labelText;
+	private FontMetrics labelMetrics;
+	private int labelWidth;
+
+	/**
+	 * Half the size of a cube, and the radius of the sphere around it.
+	 */
+	private static final float HALF_SIZE = 50;
+	private static final float RADIUS = HALF_SIZE * (float) Math.sqrt(3);
+	/**
+	 * The number of floats per face written by
+	 * {@link #projectFaces(ViewProjection, float[], int)}.
+	 */
+	static final int FACE_FLOATS = 12;
+	private static final Font LABEL_FONT = new Font("default", Font.BOLD, 12);
+	private static final ThreadLocal<PaintBuffers> BUFFERS = ThreadLocal.withInitial(PaintBuffers::new);
+
+	/**
+	 * Working storage for painting, one per painting thread.
+	 */
+	private static final class PaintBuffers {
+		final Point3D point = new Point3D();
+		final int[] face = new int[6];
+		final float[] depth = new float[6];
+		final int[] x = new int[4];
+		final int[] y = new int[4];
+	}
 
 	@Override
 	public int hashCode() {
@@ -79,17 +112,16 @@ public class Cube3D {
 			throw new IllegalArgumentException("illegal block number " + i);
 		}
 		this.blockNumber = i;
+		this.labelText = Integer.toString(i);
 		reset();
 	}
 
 	/**
 	 * put point to initial position (in origin, 50 below table). Erase all
-	 * properties, so block is blank and on table after reset.
+	 * transformations. What the block is on is kept by the
+	 * {@link BlocksWorldModel}.
 	 */
-	public synchronized void reset() {
-		this.bTopBlock = true;
-		this.iOnBlock = null;
-
+	public void reset() {
 		Point3D V[];
 		// 50 units above origin, -Y is up
 		this.centerPoint = new Point3D(0, -50, 0);
@@ -138,8 +170,8 @@ public class Cube3D {
 
 	public Cube3D(final Cube3D c) {
 		int i;
-		this.bTopBlock = c.bTopBlock;
-		this.iOnBlock = c.iOnBlock;
+		this.blockNumber = c.blockNumber;
+		this.labelText = c.labelText;
 		this.BlockColor = c.BlockColor;
 		this.centerPoint = new Point3D(c.centerPoint);
 		this.frontFaceCenter = new Point3D(c.frontFaceCenter);
@@ -149,7 +181,7 @@ public class Cube3D {
 		}
 	}
 
-	public synchronized void transform(final HMatrix3D m) {
+	public void transform(final HMatrix3D m) {
 		this.centerPoint.transform(m);
 		this.frontFaceCenter.transform(m);
 		int i = 0;
@@ -158,6 +190,16 @@ public class Cube3D {
 		}
 	}
 
+	/**
+	 * Translate the cube so that its center point ends up at given point.
+	 *
+	 * @param p the new center point.
+	 */
+	public void moveTo(final Point3D p) {
+		transform(new THMatrix3D(p.getX() - this.centerPoint.getX(), p.getY() - this.centerPoint.getY(),
+				p.getZ() - this.centerPoint.getZ()));
+	}
+
 	public float getDSquared(final Point3D p) {
 		// Get the square of the distance from the center of the cube to some point:
 		return (this.centerPoint.getX() - p.getX()) * (this.centerPoint.getX() - p.getX())
@@ -169,102 +211,161 @@ public class Cube3D {
 		return new Point3D(this.centerPoint); // Return a copy of the center point of the cube
 	}
 
-	// The cube paints itself:
-	public synchronized void paint(final Graphics g, final HMatrix3D pxf, final Point3D vp, final float sfFocalLength,
-			final int width, final int height) {
-		int i;
-		int j;
-		Polygon Pgon;
-		int x[]; // For passing x coordinates to the polygon
-		int y[]; // For passing y coordinates to the polygon
-		x = new int[5];
-		y = new int[5];
-		Point3D TempPoint; // Temporary point
-		float sfAdjust;
-		float sfDSQi;
-		float sfDSQj;
-
-		// Sort the faces on distance from the viewpoint:
-		// This fixed loop bubble sort is good enough for a simple cube.
-		for (i = 1; i <= 5; i++) {
-			for (j = i + 1; j <= 6; j++) {
-				// Put most distant first:
-				// Distance from the face to the viewpoint
-				sfDSQi = this.F[i].getDSquared(vp);
-				sfDSQj = this.F[j].getDSquared(vp);
-				if (sfDSQj > sfDSQi) {
-					this.F[0] = this.F[j]; // Use the zeroeth face for swap space
-					this.F[j] = this.F[i];
-					this.F[i] = this.F[0];
-				}
+	/**
+	 * The cube paints itself. This does not allocate: the points are projected in
+	 * buffers of the painting thread, and the label and its size are kept. A cube
+	 * that is outside the view is skipped with one test of its bounding sphere.
+	 */
+	public void paint(final Graphics g, final ViewProjection view, final Point3D vp) {
+		if (!view.isVisible(this.centerPoint, RADIUS, HALF_SIZE)) {
+			return;
+		}
+		final PaintBuffers buffers = BUFFERS.get();
+		final Point3D point = buffers.point;
+		final int[] face = buffers.face;
+		final float[] depth = buffers.depth;
+		final int[] x = buffers.x;
+		final int[] y = buffers.y;
+
+		// Sort the faces on distance from the viewpoint, most distant first.
+		for (int i = 0; i < 6; i++) {
+			final float sfDSQ = this.F[i + 1].getDSquared(vp);
+			int j = i;
+			for (; j > 0 && depth[j - 1] < sfDSQ; j--) {
+				depth[j] = depth[j - 1];
+				face[j] = face[j - 1];
 			}
+			depth[j] = sfDSQ;
+			face[j] = i + 1;
 		}
 		// Render the faces to the applet panel:
-		for (i = 1; i <= 6; i++) // For each face
+		final Color color = getBlockColor();
+		for (int i = 0; i < 6; i++) // For each face
 		{
+			final Square3D square = this.F[face[i]];
 			// Establish a front clipping plane so we don't render faces behind us:
-			TempPoint = this.F[i].getPoint(0); // Center point of the face
-			TempPoint.transform(pxf);
-			if (TempPoint.getZ() < -100) {
-				for (j = 1; j <= 4; j++) { // For each point of the face
-					TempPoint = this.F[i].getPoint(j);
-					TempPoint.transform(pxf);
+			view.transform(square.getPoint(0, point)); // Center point of the face
+			if (point.getZ() < ViewProjection.NEAR) {
+				for (int j = 1; j <= 4; j++) { // For each point of the face
+					view.transform(square.getPoint(j, point));
 					// Adjust x and y for perspective view
-					sfAdjust = sfFocalLength / TempPoint.getZ();
-					x[j - 1] = width / 2 + ((int) (TempPoint.getX() * sfAdjust));
-					y[j - 1] = height / 2 - ((int) (TempPoint.getY() * sfAdjust));
+					x[j - 1] = view.screenX(point);
+					y[j - 1] = view.screenY(point);
 				}
-				Pgon = new Polygon(x, y, 4);
-				g.setColor(getBlockColor());
-				g.fillPolygon(Pgon);
+				g.setColor(color);
+				g.fillPolygon(x, y, 4);
 				g.setColor(Color.black);
-				g.drawPolygon(Pgon);
+				g.drawPolygon(x, y, 4);
 			}
 		}
 
-		TempPoint = new Point3D(this.frontFaceCenter);
-		TempPoint.transform(pxf);
-		sfAdjust = sfFocalLength / TempPoint.getZ();
+		view.transform(point.set(this.frontFaceCenter));
 		// Adjust x and y for perspective view
-		int xs = width / 2 + ((int) (TempPoint.getX() * sfAdjust));
-		int ys = height / 2 - ((int) (TempPoint.getY() * sfAdjust));
-		// and center
-		final String text = "" + this.blockNumber;
-		final FontMetrics fm = g.getFontMetrics();
-		xs -= fm.stringWidth(text) / 2;
-		ys += fm.getAscent() / 2;
-		g.setFont(new Font("default", Font.BOLD, 12));
-		g.drawString(text, xs, ys);
+		paintLabel(g, view.screenX(point), view.screenY(point));
 	}
 
-	public Color getBlockColor() {
-		if (this.selected) {
-			return this.BlockColor.darker();
-		} else {
-			return this.BlockColor;
+	/**
+	 * Project the faces of the cube that face the viewer, for the
+	 * {@link ZBufferRenderer}. Faces behind the front clipping plane are left
+	 * out, as in {@link #paint(Graphics, ViewProjection, Point3D)}.
+	 *
+	 * @param view   the view
+	 * @param out    gets {@link #FACE_FLOATS} floats per face: the screen x,
+	 *               screen y and 1/distance of each of its 4 corners.
+	 * @param offset where to put the first face in out
+	 * @return the number of faces, at most 3.
+	 */
+	int projectFaces(final ViewProjection view, final float[] out, int offset) {
+		if (!view.isVisible(this.centerPoint, RADIUS, HALF_SIZE)) {
+			return 0;
 		}
-
+		final Point3D point = BUFFERS.get().point;
+		view.transform(point.set(this.centerPoint));
+		final float cx = point.getX();
+		final float cy = point.getY();
+		final float cz = point.getZ();
+		int faces = 0;
+		for (int i = 1; i <= 6; i++) {
+			final Square3D square = this.F[i];
+			view.transform(square.getPoint(0, point));
+			if (point.getZ() >= ViewProjection.NEAR || !facesViewer(point, cx, cy, cz)) {
+				continue;
+			}
+			for (int j = 1; j <= 4; j++) {
+				view.transform(square.getPoint(j, point));
+				out[offset++] = view.projectX(point);
+				out[offset++] = view.projectY(point);
+				out[offset++] = -1 / point.getZ();
+			}
+			faces++;
+		}
+		return faces;
 	}
 
-	public boolean topBlock() {
-		return this.bTopBlock;
+	/**
+	 * Project the center of the front face, where the label is drawn.
+	 *
+	 * @param view the view
+	 * @param out  gets the screen x, screen y and 1/distance of the point.
+	 * @return false if the front face can not be seen, and so neither the label.
+	 */
+	boolean projectLabel(final ViewProjection view, final float[] out) {
+		if (!view.isVisible(this.centerPoint, RADIUS, HALF_SIZE)) {
+			return false;
+		}
+		final Point3D point = BUFFERS.get().point;
+		view.transform(point.set(this.centerPoint));
+		final float cx = point.getX();
+		final float cy = point.getY();
+		final float cz = point.getZ();
+		view.transform(point.set(this.frontFaceCenter));
+		if (point.getZ() >= ViewProjection.NEAR || !facesViewer(point, cx, cy, cz)) {
+			return false;
+		}
+		out[0] = view.projectX(point);
+		out[1] = view.projectY(point);
+		out[2] = -1 / point.getZ();
+		return true;
 	}
 
-	public void setTopBlock(final boolean v) {
-		this.bTopBlock = v;
+	/**
+	 * A face is seen from the front if its outward normal, from the center of
+	 * the cube to the center of the face, points towards the viewer in the
+	 * origin. All in view space.
+	 */
+	private static boolean facesViewer(final Point3D face, final float cx, final float cy, final float cz) {
+		return (face.getX() - cx) * face.getX() + (face.getY() - cy) * face.getY()
+				+ (face.getZ() - cz) * face.getZ() < 0;
 	}
 
 	/**
-	 * get the block that this block rests on.
+	 * Draw the label centered around a point.
 	 *
-	 * @return
+	 * @param g  the graphics to draw on
+	 * @param xs x of the center of the label
+	 * @param ys y of the center of the label
 	 */
-	public Cube3D getOnBlock() {
-		return this.iOnBlock;
+	void paintLabel(final Graphics g, final int xs, final int ys) {
+		g.setColor(Color.black);
+		g.setFont(LABEL_FONT);
+		final FontMetrics fm = g.getFontMetrics();
+		if (fm != this.labelMetrics) {
+			this.labelMetrics = fm;
+			this.labelWidth = fm.stringWidth(this.labelText);
+		}
+		g.drawString(this.labelText, xs - this.labelWidth / 2, ys + fm.getAscent() / 2);
 	}
 
-	public void setOnBlock(final Cube3D i) {
-		this.iOnBlock = i;
+	public Color getBlockColor() {
+		if (this.selected) {
+			if (this.selectedColor == null) {
+				this.selectedColor = this.BlockColor.darker();
+			}
+			return this.selectedColor;
+		} else {
+			return this.BlockColor;
+		}
+
 	}
 
 	/**
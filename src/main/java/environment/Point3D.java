@@ -42,6 +42,19 @@ public class Point3D {
 		this.z = c;
 	}
 
+	/**
+	 * Copy the coordinates of another point.
+	 *
+	 * @param p the point to copy
+	 * @return this point
+	 */
+	public Point3D set(final Point3D p) {
+		this.x = p.x;
+		this.y = p.y;
+		this.z = p.z;
+		return this;
+	}
+
 	public void setX(final float a) {
 		this.x = a;
 	}
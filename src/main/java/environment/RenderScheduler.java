@@ -0,0 +1,81 @@
+package environment;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Decides when to render after changes of the model. Changes are collected,
+ * and at most one frame is rendered per frame time, from the state at that
+ * moment. Asking for a frame never waits, so the thread changing the model is
+ * not held up by rendering.
+ * <p>
+ * In idle mode a frame is only rendered once the model did not change for a
+ * whole frame time. As long as the model keeps changing, nothing is rendered.
+ */
+public class RenderScheduler {
+	/**
+	 * One timer thread for all schedulers.
+	 */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "BlocksWorld render scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final Runnable render;
+	private final long frameNanos;
+	private final boolean idle;
+	/**
+	 * True if a frame has been scheduled and not yet rendered.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private volatile long lastChange;
+	private volatile long lastFrame;
+
+	/**
+	 * @param render renders a frame. It is run on the event dispatch thread.
+	 * @param fps    the maximum number of frames per second.
+	 * @param idle   true to render only when the model is idle.
+	 */
+	public RenderScheduler(final Runnable render, final int fps, final boolean idle) {
+		if (fps <= 0) {
+			throw new IllegalArgumentException("frame rate must be positive but got " + fps);
+		}
+		this.render = render;
+		this.frameNanos = TimeUnit.SECONDS.toNanos(1) / fps;
+		this.idle = idle;
+		this.lastFrame = System.nanoTime() - this.frameNanos;
+	}
+
+	/**
+	 * Ask for a frame, because the model changed. Returns immediately.
+	 */
+	public void request() {
+		final long now = System.nanoTime();
+		this.lastChange = now;
+		if (this.scheduled.compareAndSet(false, true)) {
+			final long delay = this.idle ? this.frameNanos : this.lastFrame + this.frameNanos - now;
+			TIMER.schedule(this::frame, Math.max(0, delay), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Run by the timer when a frame is due.
+	 */
+	private void frame() {
+		final long now = System.nanoTime();
+		if (this.idle && now - this.lastChange < this.frameNanos) {
+			// still busy, try again a frame time after the last change.
+			TIMER.schedule(this::frame, this.lastChange + this.frameNanos - now, TimeUnit.NANOSECONDS);
+			return;
+		}
+		this.lastFrame = now;
+		// changes from here on need another frame.
+		this.scheduled.set(false);
+		SwingUtilities.invokeLater(this.render);
+	}
+}
@@ -80,6 +80,17 @@ public class Square3D {
 		return new Point3D(this.V[i]); // Makes a copy of the point
 	}
 
+	/**
+	 * Copy a point of the square without allocating.
+	 *
+	 * @param i   0 for the center, 1-4 for the corners
+	 * @param out point to copy into
+	 * @return out
+	 */
+	public Point3D getPoint(final int i, final Point3D out) {
+		return out.set(this.V[i]);
+	}
+
 	public void transform(final HMatrix3D m) {
 		for (int i = 0; i <= 4; i++) {
 			this.V[i].transform(m); // Transform all the points in the square
@@ -0,0 +1,167 @@
+package environment;
+
+/**
+ * The view of one frame: the perspective transformation, flattened into plain
+ * fields, together with the focal length and the size of the screen. Made once
+ * when the camera, zoom or screen size changes and then used for all points of
+ * all blocks.
+ * <p>
+ * A point transformed by the view has the viewer in the origin, looking down
+ * the negative Z axis. Only points with Z below {@link #NEAR} are drawn. The
+ * view can also tell if a sphere can show on screen at all, so that blocks
+ * outside the view frustum can be skipped before any of their faces is
+ * transformed.
+ */
+public class ViewProjection {
+	/**
+	 * The front clipping plane: faces with a center at Z above this are not
+	 * drawn.
+	 */
+	public static final float NEAR = -100;
+	/**
+	 * Extra room in pixels around the screen for culling, for the labels that
+	 * stick out of their block.
+	 */
+	private static final int MARGIN = 16;
+
+	private final float m11, m12, m13, m14;
+	private final float m21, m22, m23, m24;
+	private final float m31, m32, m33, m34;
+	private final float focalLength;
+	private final int width;
+	private final int height;
+	/**
+	 * Unit normals (nx, nz) of the left/right and (ny, nz) of the top/bottom
+	 * planes of the frustum. A point is on the visible side of the right plane
+	 * if x * sideX + z * sideXZ <= 0, and so on.
+	 */
+	private final float sideX, sideXZ;
+	private final float sideY, sideYZ;
+
+	/**
+	 * @param xform       the perspective transformation, see
+	 *                    {@link BlocksWorldRenderer#makePerspXform(Point3D, float, float, float)}.
+	 *                    Only the first three rows are used; it is copied, so
+	 *                    later changes to it have no effect.
+	 * @param focalLength the focal length
+	 * @param width       width of the screen
+	 * @param height      height of the screen
+	 */
+	public ViewProjection(final HMatrix3D xform, final float focalLength, final int width, final int height) {
+		this.m11 = xform.getElement(1, 1);
+		this.m12 = xform.getElement(1, 2);
+		this.m13 = xform.getElement(1, 3);
+		this.m14 = xform.getElement(1, 4);
+		this.m21 = xform.getElement(2, 1);
+		this.m22 = xform.getElement(2, 2);
+		this.m23 = xform.getElement(2, 3);
+		this.m24 = xform.getElement(2, 4);
+		this.m31 = xform.getElement(3, 1);
+		this.m32 = xform.getElement(3, 2);
+		this.m33 = xform.getElement(3, 3);
+		this.m34 = xform.getElement(3, 4);
+		this.focalLength = focalLength;
+		this.width = width;
+		this.height = height;
+
+		// x on screen is f*x/-z, so the right plane is f*x + (w/2)*z = 0.
+		final float halfWidth = width / 2 + MARGIN;
+		final float halfHeight = height / 2 + MARGIN;
+		final float lengthX = (float) Math.sqrt(focalLength * focalLength + halfWidth * halfWidth);
+		final float lengthY = (float) Math.sqrt(focalLength * focalLength + halfHeight * halfHeight);
+		this.sideX = focalLength / lengthX;
+		this.sideXZ = halfWidth / lengthX;
+		this.sideY = focalLength / lengthY;
+		this.sideYZ = halfHeight / lengthY;
+	}
+
+	/**
+	 * Check if this view was made for the given parameters.
+	 *
+	 * @return true if nothing changed
+	 */
+	boolean isFor(final HMatrix3D xform, final float focalLength, final int width, final int height) {
+		return this.m11 == xform.getElement(1, 1) && this.m12 == xform.getElement(1, 2)
+				&& this.m13 == xform.getElement(1, 3) && this.m14 == xform.getElement(1, 4)
+				&& this.m21 == xform.getElement(2, 1) && this.m22 == xform.getElement(2, 2)
+				&& this.m23 == xform.getElement(2, 3) && this.m24 == xform.getElement(2, 4)
+				&& this.m31 == xform.getElement(3, 1) && this.m32 == xform.getElement(3, 2)
+				&& this.m33 == xform.getElement(3, 3) && this.m34 == xform.getElement(3, 4)
+				&& this.focalLength == focalLength && this.width == width && this.height == height;
+	}
+
+	/**
+	 * Transform a point to view space, in place. Same as
+	 * {@link Point3D#transform(HMatrix3D)} with the perspective transformation.
+	 *
+	 * @param p the point
+	 * @return p
+	 */
+	public Point3D transform(final Point3D p) {
+		final float a = p.getX();
+		final float b = p.getY();
+		final float c = p.getZ();
+		p.setX(this.m11 * a + this.m12 * b + this.m13 * c + this.m14);
+		p.setY(this.m21 * a + this.m22 * b + this.m23 * c + this.m24);
+		p.setZ(this.m31 * a + this.m32 * b + this.m33 * c + this.m34);
+		return p;
+	}
+
+	/**
+	 * @param p a point in view space
+	 * @return the x coordinate of p on screen
+	 */
+	public int screenX(final Point3D p) {
+		return this.width / 2 + ((int) (p.getX() * (this.focalLength / p.getZ())));
+	}
+
+	/**
+	 * @param p a point in view space
+	 * @return the y coordinate of p on screen
+	 */
+	public int screenY(final Point3D p) {
+		return this.height / 2 - ((int) (p.getY() * (this.focalLength / p.getZ())));
+	}
+
+	/**
+	 * @param p a point in view space
+	 * @return the x coordinate of p on screen, not rounded
+	 */
+	public float projectX(final Point3D p) {
+		return this.width / 2 + p.getX() * (this.focalLength / p.getZ());
+	}
+
+	/**
+	 * @param p a point in view space
+	 * @return the y coordinate of p on screen, not rounded
+	 */
+	public float projectY(final Point3D p) {
+		return this.height / 2 - p.getY() * (this.focalLength / p.getZ());
+	}
+
+	/**
+	 * Check if any of a sphere can be seen.
+	 *
+	 * @param center the center of the sphere, in world space. Not changed.
+	 * @param radius the radius of the sphere
+	 * @param near   how far the faces to draw can be in front of the center:
+	 *               the sphere is behind the front clipping plane if its center
+	 *               is more than this behind {@link #NEAR}.
+	 * @return false if the sphere is certainly outside the view frustum.
+	 */
+	public boolean isVisible(final Point3D center, final float radius, final float near) {
+		final float cx = center.getX();
+		final float cy = center.getY();
+		final float cz = center.getZ();
+		final float z = this.m31 * cx + this.m32 * cy + this.m33 * cz + this.m34;
+		if (z - near >= NEAR) {
+			return false;
+		}
+		final float x = this.m11 * cx + this.m12 * cy + this.m13 * cz + this.m14;
+		if (Math.abs(x) * this.sideX + z * this.sideXZ > radius) {
+			return false;
+		}
+		final float y = this.m21 * cx + this.m22 * cy + this.m23 * cz + this.m24;
+		return Math.abs(y) * this.sideY + z * this.sideYZ <= radius;
+	}
+}
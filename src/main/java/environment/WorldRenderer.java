@@ -0,0 +1,24 @@
+package environment;
+
+import java.awt.Graphics;
+
+/**
+ * Draws a {@link BlocksWorldModel} on a {@link Graphics}. The
+ * {@link BlocksWorldPainter} can use any renderer: the default
+ * {@link BlocksWorldRenderer} uses the painter's algorithm, the
+ * {@link ZBufferRenderer} a z-buffer.
+ */
+public interface WorldRenderer {
+	/**
+	 * Draw the world.
+	 *
+	 * @param g           the graphics to draw on
+	 * @param perspXform  the perspective transformation, see
+	 *                    {@link BlocksWorldRenderer#makePerspXform(Point3D, float, float, float)}
+	 * @param viewPoint   the point in world space the viewer is seeing from
+	 * @param focalLength the focal length
+	 * @param width       width of the area to draw
+	 * @param height      height of the area to draw
+	 */
+	void paint(Graphics g, HMatrix3D perspXform, Point3D viewPoint, float focalLength, int width, int height);
+}
@@ -0,0 +1,385 @@
+package environment;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the blocks of a {@link BlocksWorldModel} with a z-buffer, instead of
+ * the painter's algorithm of {@link BlocksWorldRenderer}. Nothing is sorted, and
+ * blocks that are close together or in tall stacks are always drawn correctly.
+ * <p>
+ * The faces that face the viewer are projected once per frame and put in the
+ * screen tiles they cover. The tiles are then rasterized in parallel on a
+ * {@link ForkJoinPool}, into an int[] color buffer and an int[] z-buffer that
+ * back an image. The z-buffer holds the float bits of 1/distance, which is
+ * linear on screen, so a face is closer if its bits are larger; 0 is empty.
+ * <p>
+ * A renderer should only be used by one thread at a time.
+ */
+public class ZBufferRenderer implements WorldRenderer {
+	/**
+	 * Width and height in pixels of a tile.
+	 */
+	private static final int TILE = 64;
+	/**
+	 * Pixels closer than this to the edge of a face are part of its outline.
+	 */
+	private static final float OUTLINE = 1;
+	/**
+	 * A label is drawn if the z-buffer at its center is no more than this
+	 * fraction closer than the label itself.
+	 */
+	private static final float LABEL_DEPTH = 1e-3f;
+	private static final int BLACK = Color.black.getRGB();
+	private static final ThreadLocal<EdgeBuffers> BUFFERS = ThreadLocal.withInitial(EdgeBuffers::new);
+
+	/**
+	 * The edges of the face being rasterized, one per rasterizing thread. Edge i
+	 * goes from corner i to corner i+1: e = a*x + b*y + c is 0 on the edge and
+	 * positive inside, and e*scale is the distance to the edge in pixels.
+	 */
+	private static final class EdgeBuffers {
+		final float[] a = new float[4];
+		final float[] b = new float[4];
+		final float[] c = new float[4];
+		final float[] e = new float[4];
+		final float[] scale = new float[4];
+	}
+
+	private final BlocksWorldModel world;
+	private final ForkJoinPool pool;
+	private ViewProjection view;
+
+	private BufferedImage image;
+	private int width;
+	private int height;
+	private int[] color;
+	private int[] depth;
+	private int background;
+
+	/**
+	 * The projected faces of this frame: {@link Cube3D#FACE_FLOATS} floats per
+	 * face in faces and its color in faceColor.
+	 */
+	private int faceCount;
+	private float[] faces = new float[64 * Cube3D.FACE_FLOATS];
+	private int[] faceColor = new int[64];
+	/**
+	 * The faces per tile: the faces of tile t are tileFaces[tileStart[t]] up to
+	 * tileFaces[tileStart[t + 1]].
+	 */
+	private int tilesX;
+	private int tilesY;
+	private int[] tileStart = new int[1];
+	private int[] tileFaces = new int[64];
+	private final float[] label = new float[3];
+
+	/**
+	 * Renderer that uses the common pool.
+	 *
+	 * @param model the world to draw.
+	 */
+	public ZBufferRenderer(final BlocksWorldModel model) {
+		this(model, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param model the world to draw.
+	 * @param pool  the pool to rasterize on.
+	 */
+	public ZBufferRenderer(final BlocksWorldModel model, final ForkJoinPool pool) {
+		this.world = model;
+		this.pool = pool;
+	}
+
+	@Override
+	public void paint(final Graphics g, final HMatrix3D perspXform, final Point3D viewPoint, final float focalLength,
+			final int width, final int height) {
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		final List<Cube3D> blocks = this.world.getBlocks();
+		if (this.view == null || !this.view.isFor(perspXform, focalLength, width, height)) {
+			this.view = new ViewProjection(perspXform, focalLength, width, height);
+		}
+		project(blocks);
+		render(this.faces, this.faceColor, this.faceCount, width, height,
+				((g instanceof Graphics2D) ? ((Graphics2D) g).getBackground() : Color.lightGray).getRGB());
+		g.drawImage(this.image, 0, 0, null);
+
+		// The labels of the blocks whose front face is seen at its center.
+		for (final Cube3D block : blocks) {
+			if (block.projectLabel(this.view, this.label)) {
+				final int x = (int) this.label[0];
+				final int y = (int) this.label[1];
+				if (x >= 0 && x < width && y >= 0 && y < height && Float.intBitsToFloat(
+						this.depth[y * width + x]) <= this.label[2] * (1 + LABEL_DEPTH)) {
+					block.paintLabel(g, x, y);
+				}
+			}
+		}
+
+		BlocksWorldRenderer.paintBorder(g, width, height);
+	}
+
+	/**
+	 * Rasterize projected faces into the image.
+	 *
+	 * @param faces      {@link Cube3D#FACE_FLOATS} floats per face, as made by
+	 *                   {@link Cube3D#projectFaces(ViewProjection, float[], int)}
+	 * @param faceColor  the RGB color of each face
+	 * @param faceCount  the number of faces
+	 * @param width      width of the image
+	 * @param height     height of the image
+	 * @param background RGB color where there is no face
+	 * @return the image. It is reused by the next frame.
+	 */
+	BufferedImage render(final float[] faces, final int[] faceColor, final int faceCount, final int width,
+			final int height, final int background) {
+		resize(width, height);
+		this.faces = faces;
+		this.faceColor = faceColor;
+		this.faceCount = faceCount;
+		this.background = background;
+		bin();
+		this.pool.invoke(new Tiles(0, this.tilesX * this.tilesY));
+		return this.image;
+	}
+
+	/**
+	 * Make the image and buffers fit the screen.
+	 */
+	private void resize(final int width, final int height) {
+		if (this.image != null && this.width == width && this.height == height) {
+			return;
+		}
+		this.width = width;
+		this.height = height;
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		this.color = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+		this.depth = new int[width * height];
+		this.tilesX = (width + TILE - 1) / TILE;
+		this.tilesY = (height + TILE - 1) / TILE;
+		this.tileStart = new int[this.tilesX * this.tilesY + 1];
+	}
+
+	/**
+	 * Project the faces of all blocks that face the viewer.
+	 */
+	private void project(final List<Cube3D> blocks) {
+		int n = 0;
+		for (final Cube3D block : blocks) {
+			if (this.faceColor.length < n + 6) {
+				this.faceColor = Arrays.copyOf(this.faceColor, 2 * (n + 6));
+				this.faces = Arrays.copyOf(this.faces, this.faceColor.length * Cube3D.FACE_FLOATS);
+			}
+			final int added = block.projectFaces(this.view, this.faces, n * Cube3D.FACE_FLOATS);
+			if (added > 0) {
+				Arrays.fill(this.faceColor, n, n + added, block.getBlockColor().getRGB());
+				n += added;
+			}
+		}
+		this.faceCount = n;
+	}
+
+	/**
+	 * Put the faces in the tiles that their bounding box covers, with a count
+	 * per tile first so that all lists fit in one array.
+	 */
+	private void bin() {
+		final int[] start = this.tileStart;
+		Arrays.fill(start, 0);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int f = 0; f < this.faceCount; f++) {
+				final int o = f * Cube3D.FACE_FLOATS;
+				float minX = this.faces[o];
+				float maxX = minX;
+				float minY = this.faces[o + 1];
+				float maxY = minY;
+				for (int v = 1; v < 4; v++) {
+					final float x = this.faces[o + 3 * v];
+					final float y = this.faces[o + 3 * v + 1];
+					minX = Math.min(minX, x);
+					maxX = Math.max(maxX, x);
+					minY = Math.min(minY, y);
+					maxY = Math.max(maxY, y);
+				}
+				if (maxX < 0 || maxY < 0 || minX >= this.width || minY >= this.height) {
+					continue;
+				}
+				final int tx0 = Math.max(0, (int) minX / TILE);
+				final int tx1 = Math.min(this.tilesX - 1, (int) maxX / TILE);
+				final int ty0 = Math.max(0, (int) minY / TILE);
+				final int ty1 = Math.min(this.tilesY - 1, (int) maxY / TILE);
+				for (int ty = ty0; ty <= ty1; ty++) {
+					for (int tx = tx0; tx <= tx1; tx++) {
+						final int t = ty * this.tilesX + tx;
+						if (pass == 0) {
+							start[t + 1]++;
+						} else {
+							this.tileFaces[start[t]++] = f;
+						}
+					}
+				}
+			}
+			if (pass == 0) {
+				// start[t + 1] holds the count of tile t; sum to get where each
+				// tile starts. The second pass moves start[t] up to where tile t
+				// ends.
+				for (int t = 1; t < start.length; t++) {
+					start[t] += start[t - 1];
+				}
+				if (this.tileFaces.length < start[start.length - 1]) {
+					this.tileFaces = new int[2 * start[start.length - 1]];
+				}
+			}
+		}
+		System.arraycopy(start, 0, start, 1, start.length - 1);
+		start[0] = 0;
+	}
+
+	/**
+	 * Rasterizes a range of tiles, splitting it over the pool.
+	 */
+	@SuppressWarnings("serial")
+	private class Tiles extends RecursiveAction {
+		private final int from;
+		private final int to;
+
+		Tiles(final int from, final int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.to - this.from > 1) {
+				final int mid = (this.from + this.to) >>> 1;
+				invokeAll(new Tiles(this.from, mid), new Tiles(mid, this.to));
+			} else if (this.to > this.from) {
+				rasterize(this.from);
+			}
+		}
+	}
+
+	/**
+	 * Clear a tile and draw its faces in it.
+	 *
+	 * @param t the tile number
+	 */
+	private void rasterize(final int t) {
+		final int x0 = (t % this.tilesX) * TILE;
+		final int y0 = (t / this.tilesX) * TILE;
+		final int x1 = Math.min(x0 + TILE, this.width);
+		final int y1 = Math.min(y0 + TILE, this.height);
+		for (int y = y0; y < y1; y++) {
+			Arrays.fill(this.color, y * this.width + x0, y * this.width + x1, this.background);
+			Arrays.fill(this.depth, y * this.width + x0, y * this.width + x1, 0);
+		}
+		final EdgeBuffers buffers = BUFFERS.get();
+		final float[] a = buffers.a;
+		final float[] b = buffers.b;
+		final float[] c = buffers.c;
+		final float[] e = buffers.e;
+		final float[] scale = buffers.scale;
+		for (int k = this.tileStart[t]; k < this.tileStart[t + 1]; k++) {
+			final int f = this.tileFaces[k];
+			final int o = f * Cube3D.FACE_FLOATS;
+			final float[] v = this.faces;
+
+			// The sign of the area tells the orientation of the corners on screen.
+			float area = 0;
+			for (int i = 0; i < 4; i++) {
+				final int j = o + 3 * ((i + 1) & 3);
+				area += v[o + 3 * i] * v[j + 1] - v[j] * v[o + 3 * i + 1];
+			}
+			if (area == 0) {
+				continue;
+			}
+			final float sign = (area > 0) ? 1 : -1;
+			float minX = Float.MAX_VALUE;
+			float maxX = -Float.MAX_VALUE;
+			float minY = Float.MAX_VALUE;
+			float maxY = -Float.MAX_VALUE;
+			for (int i = 0; i < 4; i++) {
+				final int p = o + 3 * i;
+				final int q = o + 3 * ((i + 1) & 3);
+				a[i] = sign * (v[p + 1] - v[q + 1]);
+				b[i] = sign * (v[q] - v[p]);
+				c[i] = -(a[i] * v[p] + b[i] * v[p + 1]);
+				final float length = (float) Math.sqrt(a[i] * a[i] + b[i] * b[i]);
+				scale[i] = (length == 0) ? 0 : 1 / length;
+				minX = Math.min(minX, v[p]);
+				maxX = Math.max(maxX, v[p]);
+				minY = Math.min(minY, v[p + 1]);
+				maxY = Math.max(maxY, v[p + 1]);
+			}
+
+			// 1/distance is linear on screen: fit z = zx*x + zy*y + z0 through the
+			// corners 0, 1, 2 or 0, 2, 3, whichever is the larger triangle.
+			final int t0 = o;
+			final int t1 = (Math.abs(triangle(v, o, o + 3, o + 6)) >= Math.abs(triangle(v, o, o + 6, o + 9))) ? o + 3
+					: o + 6;
+			final int t2 = (t1 == o + 3) ? o + 6 : o + 9;
+			final float det = triangle(v, t0, t1, t2);
+			if (det == 0) {
+				continue;
+			}
+			final float dx1 = v[t1] - v[t0];
+			final float dy1 = v[t1 + 1] - v[t0 + 1];
+			final float dz1 = v[t1 + 2] - v[t0 + 2];
+			final float dx2 = v[t2] - v[t0];
+			final float dy2 = v[t2 + 1] - v[t0 + 1];
+			final float dz2 = v[t2 + 2] - v[t0 + 2];
+			final float zx = (dz1 * dy2 - dz2 * dy1) / det;
+			final float zy = (dx1 * dz2 - dx2 * dz1) / det;
+			final float z0 = v[t0 + 2] - zx * v[t0] - zy * v[t0 + 1];
+
+			final int fx0 = Math.max(x0, (int) Math.floor(minX));
+			final int fx1 = Math.min(x1, (int) Math.ceil(maxX) + 1);
+			final int fy0 = Math.max(y0, (int) Math.floor(minY));
+			final int fy1 = Math.min(y1, (int) Math.ceil(maxY) + 1);
+			final int rgb = this.faceColor[f];
+			for (int y = fy0; y < fy1; y++) {
+				// sample in the middle of the pixel
+				final float py = y + 0.5f;
+				final float px = fx0 + 0.5f;
+				for (int i = 0; i < 4; i++) {
+					e[i] = a[i] * px + b[i] * py + c[i];
+				}
+				float z = zx * px + zy * py + z0;
+				int index = y * this.width + fx0;
+				for (int x = fx0; x < fx1; x++, index++) {
+					if (e[0] >= 0 && e[1] >= 0 && e[2] >= 0 && e[3] >= 0) {
+						final int bits = Float.floatToRawIntBits(z);
+						if (bits > this.depth[index]) {
+							this.depth[index] = bits;
+							final float edge = Math.min(Math.min(e[0] * scale[0], e[1] * scale[1]),
+									Math.min(e[2] * scale[2], e[3] * scale[3]));
+							this.color[index] = (edge < OUTLINE) ? BLACK : rgb;
+						}
+					}
+					e[0] += a[0];
+					e[1] += a[1];
+					e[2] += a[2];
+					e[3] += a[3];
+					z += zx;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Twice the signed area of the triangle of three corners.
+	 */
+	private static float triangle(final float[] v, final int p, final int q, final int r) {
+		return (v[q] - v[p]) * (v[r + 1] - v[p + 1]) - (v[r] - v[p]) * (v[q + 1] - v[p + 1]);
+	}
+}
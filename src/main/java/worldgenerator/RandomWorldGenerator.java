@@ -1,22 +1,89 @@
 package worldgenerator;
 
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.SoftReference;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
-import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 /**
  * Generates random configurations for the Blocks World.
  *
  * This generator has been adapted from the C program written by John Slaney at
  * http://users.cecs.anu.edu.au/~jks/bwstates.html.
+ * <p>
+ * All working storage is allocated once, in the constructor, and reused for
+ * every state. {@link #nextState(int[])} does not allocate at all.
+ * <p>
+ * Slaney's method needs a table of about N*N/4 ratios, which is shared by all
+ * generators for the same N. For very large N there is a low memory mode that
+ * only needs storage linear in N. It also samples uniformly, but gives
+ * different states for the same seed.
+ * <p>
+ * Besides the sequence of {@link #nextState()}, states can be generated by
+ * index with {@link #state(long, int[])}. State i only depends on N, the seed,
+ * the mode and i, so {@link #states(int, long, long, boolean)} can generate
+ * them in parallel and still give the same result for any number of threads.
  */
 public class RandomWorldGenerator {
+	/**
+	 * Ratio tables by number of blocks. The tables are never modified after
+	 * they have been made, so generators can share them.
+	 */
+	private static final Map<Integer, SoftReference<double[]>> RATIOS = new HashMap<>();
+
 	private final Random rand;
+	/**
+	 * Random source for {@link #state(long, int[])}, reseeded for every index.
+	 */
+	private final IndexedRandom indexed = new IndexedRandom();
 	private final long seed;
 	private final Sigma sigma;
-	private final Vector<Double> ratio;
-	private Map<String, Integer> stats;
+	/**
+	 * Slaney's ratio table, or null in low memory mode.
+	 */
+	private final double[] ratio;
+	/**
+	 * Low memory mode: cumulative weights of the number of towers, and buffers
+	 * for the permutation of the blocks and the places where it is cut into
+	 * towers. Null otherwise.
+	 */
+	private final double[] towers;
+	private final int[] perm;
+	private final int[] gaps;
+	private final boolean[] cut;
+	/**
+	 * Buffer for building the state string.
+	 */
+	private final StringBuilder out = new StringBuilder();
+	/**
+	 * Statistics: the number of times each state was generated, by rank. If
+	 * there are more states than {@link #STATISTICS_SIZE}, this is a sketch that
+	 * counts buckets of states instead, by rank modulo the size or by a hash of
+	 * the state if it cannot be ranked.
+	 */
+	private long[] stats;
+	private boolean statsExact;
+	private StateRanker ranker;
+	private int[] state;
+	private static final int STATISTICS_SIZE = 1 << 22;
+	/**
+	 * The number of states generated with one generator by
+	 * {@link #states(int, long, long, boolean)}.
+	 */
+	private static final int CHUNK = 1024;
 
 	/**
 	 * Random configuration generator.
@@ -26,25 +93,82 @@ public class RandomWorldGenerator {
 	 * @param buildStatistics
 	 */
 	public RandomWorldGenerator(final int N, final long seed, final boolean buildStatistics) {
+		this(N, seed, buildStatistics, false);
+	}
+
+	/**
+	 * Random configuration generator.
+	 *
+	 * @param N               number of blocks
+	 * @param seed            random seed
+	 * @param buildStatistics
+	 * @param lowMemory       true to use memory linear in N instead of Slaney's
+	 *                        ratio table. States are still uniform, but not the
+	 *                        same as those of the default mode.
+	 */
+	public RandomWorldGenerator(final int N, final long seed, final boolean buildStatistics,
+			final boolean lowMemory) {
 		if (buildStatistics) {
-			this.stats = new HashMap<>();
+			long size = STATISTICS_SIZE;
+			if (N <= StateRanker.MAX_BLOCKS) {
+				this.ranker = new StateRanker(N);
+				size = Math.min(size, this.ranker.count());
+				this.statsExact = size == this.ranker.count();
+			}
+			this.stats = new long[(int) size];
+			this.state = new int[N];
 		}
 
 		this.seed = seed;
 		this.rand = new Random(this.seed);
 		this.sigma = new Sigma(N);
-		this.ratio = new Vector<>();
-		make_ratio(this.sigma.N, this.ratio);
+		if (lowMemory) {
+			this.ratio = null;
+			this.towers = make_towers(N);
+			this.perm = new int[N];
+			this.gaps = new int[N];
+			this.cut = new boolean[N];
+		} else {
+			this.ratio = ratios(N);
+			this.towers = null;
+			this.perm = null;
+			this.gaps = null;
+			this.cut = null;
+		}
+	}
+
+	/**
+	 * Get the ratio table for N blocks, making it if it is not cached.
+	 */
+	private static double[] ratios(final int N) {
+		synchronized (RATIOS) {
+			final SoftReference<double[]> cached = RATIOS.get(N);
+			double[] ratio = (cached == null) ? null : cached.get();
+			if (ratio == null) {
+				ratio = new double[(N / 2 + 1) * (N + 2) + 1];
+				make_ratio(N, ratio);
+				RATIOS.put(N, new SoftReference<>(ratio));
+			}
+			return ratio;
+		}
 	}
 
 	/**
 	 * Generate configurations from command line.
 	 *
 	 * Usage: <numberr of blocks> <seed number> <number of iterations>
+	 * [--lowmemory] [--parallel] [--threads=n] [--output=file]
+	 * [--format=text|binary]
 	 *
-	 * Note that n>6 with i>100000 will already take a long time to run. The reason
-	 * is that the bookkeeping search/updates takes longer. For this reason, by
-	 * default, statistics has been disabled.
+	 * Statistics are disabled here; they are only printed by
+	 * {@link #print_statistics()}.
+	 * <p>
+	 * With --parallel or --threads the states are generated by index, see
+	 * {@link #states(int, long, long, boolean)}. These are not the same states as
+	 * the default sequence, but they do not depend on the number of threads.
+	 * <p>
+	 * The states are written to the output file, or to stdout, by a
+	 * {@link StateWriter} in the given format (text by default).
 	 *
 	 */
 	public static void main(final String[] args) {
@@ -54,28 +178,168 @@ public class RandomWorldGenerator {
 			seed = Integer.parseInt(args[1]);
 			loop = Integer.parseInt(args[2]);
 
-			final RandomWorldGenerator r = new RandomWorldGenerator(n, seed, false);
-			for (int i = 0; i < loop; i++) {
-				System.out.println(r.nextState());
+			boolean lowMemory = false;
+			boolean parallel = false;
+			int threads = 0;
+			String output = null;
+			StateWriter.Format format = StateWriter.Format.TEXT;
+			for (int i = 3; i < args.length; i++) {
+				if ("--lowmemory".equals(args[i])) {
+					lowMemory = true;
+				} else if ("--parallel".equals(args[i])) {
+					parallel = true;
+				} else if (args[i].startsWith("--threads=")) {
+					parallel = true;
+					threads = Integer.parseInt(args[i].substring("--threads=".length()));
+				} else if (args[i].startsWith("--output=")) {
+					output = args[i].substring("--output=".length());
+				} else if (args[i].startsWith("--format=")) {
+					format = StateWriter.Format.valueOf(args[i].substring("--format=".length()).toUpperCase());
+				} else {
+					throw new IllegalArgumentException("unknown option " + args[i]);
+				}
+			}
+
+			final WritableByteChannel channel = (output == null)
+					? Channels.newChannel(new FileOutputStream(FileDescriptor.out))
+					: FileChannel.open(Paths.get(output), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+							StandardOpenOption.TRUNCATE_EXISTING);
+			try (StateWriter writer = new StateWriter(channel, format, n, loop)) {
+				if (parallel) {
+					final Stream<int[]> states = states(n, seed, loop, lowMemory);
+					final Runnable write = () -> states.forEachOrdered(state -> {
+						try {
+							writer.write(state);
+						} catch (final IOException e) {
+							throw new UncheckedIOException(e);
+						}
+					});
+					try {
+						if (threads > 0) {
+							final ForkJoinPool pool = new ForkJoinPool(threads);
+							try {
+								pool.submit(write).get();
+							} catch (final ExecutionException e) {
+								// report it as if it happened in this thread.
+								if (e.getCause() instanceof RuntimeException) {
+									throw (RuntimeException) e.getCause();
+								}
+								if (e.getCause() instanceof Error) {
+									throw (Error) e.getCause();
+								}
+								throw new IOException(e.getCause());
+							} finally {
+								pool.shutdown();
+							}
+						} else {
+							write.run();
+						}
+					} catch (final UncheckedIOException e) {
+						throw e.getCause();
+					}
+				} else {
+					final RandomWorldGenerator r = new RandomWorldGenerator(n, seed, false, lowMemory);
+					final int[] state = new int[n];
+					for (int i = 0; i < loop; i++) {
+						writer.write(r.nextState(state));
+					}
+				}
 			}
+		} catch (final IOException e) {
+			System.err.println("failed to write the states: " + e.getMessage());
+			System.exit(1);
 		} catch (final Exception e) {
-			System.err.println("usage: <nr of blocks> <seed nr> <nr of iterations>");
+			System.err.println("usage: <nr of blocks> <seed nr> <nr of iterations> [--lowmemory] [--parallel]"
+					+ " [--threads=n] [--output=file] [--format=text|binary]");
 			System.exit(0);
 		}
 	}
 
 	/**
+	 * Generate states by index, in parallel. The stream is ordered; element i is
+	 * the state given by {@link #state(long, int[])} for index i, whatever the
+	 * number of threads. The indices are handed out in chunks of
+	 * {@link #CHUNK}, each with its own generator that is dropped when the chunk
+	 * is done, so no generator outlives the stream. Every element is a new array.
+	 *
+	 * @param N         number of blocks
+	 * @param seed      random seed
+	 * @param count     number of states
+	 * @param lowMemory see
+	 *                  {@link #RandomWorldGenerator(int, long, boolean, boolean)}
+	 * @return parallel stream of states, in the format of
+	 *         {@link #nextState(int[])}.
+	 */
+	public static Stream<int[]> states(final int N, final long seed, final long count, final boolean lowMemory) {
+		final long chunks = (count + CHUNK - 1) / CHUNK;
+		return LongStream.range(0, chunks).parallel().boxed().flatMap(chunk -> {
+			final RandomWorldGenerator generator = new RandomWorldGenerator(N, seed, false, lowMemory);
+			return LongStream.range(chunk * CHUNK, Math.min(count, (chunk + 1) * CHUNK))
+					.mapToObj(i -> generator.state(i, new int[N]));
+		});
+	}
+
+	/**
+	 * Generate the state with the given index. The state only depends on N, the
+	 * seed, the mode and the index; it does not change the sequence of
+	 * {@link #nextState()}. Statistics are not kept.
 	 *
-	 * @return
+	 * @param index the index of the state
+	 * @param out   array of at least N elements, see {@link #nextState(int[])}
+	 * @return out
+	 */
+	public int[] state(final long index, final int[] out) {
+		this.indexed.reseed(this.seed, index);
+		make_state(this.indexed);
+		for (int x = 0; x < this.sigma.N; x++) {
+			out[x] = this.sigma.S[x] + 1;
+		}
+		return out;
+	}
+
+	/**
+	 * Convert a state to a comma-separated string, as {@link #nextState()}.
+	 *
+	 * @param state state in the format of {@link #nextState(int[])}
+	 * @return Slaney-style block configuration list.
+	 */
+	public static String format(final int[] state) {
+		final StringBuilder str = new StringBuilder(state.length * 4);
+		for (int x = 0; x < state.length; x++) {
+			if (x > 0) {
+				str.append(',');
+			}
+			str.append(state[x]);
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Generate the next state.
+	 *
+	 * @return Slaney-style block configuration list, comma separated.
 	 */
 	public String nextState() {
-		make_state(this.sigma, this.ratio);
-		final String state = print_state(this.sigma);
-		if (this.stats != null) {
-			final Integer count = this.stats.containsKey(state) ? this.stats.get(state) : 0;
-			this.stats.put(state, count.intValue() + 1);
+		make_state(this.rand);
+		count(this.sigma);
+		return print_state(this.sigma);
+	}
+
+	/**
+	 * Generate the next state into an array, without allocating anything. This
+	 * gives the same states as {@link #nextState()}.
+	 *
+	 * @param out array of at least N elements. Element i is set to the block that
+	 *            block i+1 is on, 0 for the table.
+	 * @return out
+	 */
+	public int[] nextState(final int[] out) {
+		make_state(this.rand);
+		count(this.sigma);
+		for (int x = 0; x < this.sigma.N; x++) {
+			out[x] = this.sigma.S[x] + 1;
 		}
-		return state;
+		return out;
 	}
 
 	/**
@@ -95,21 +359,20 @@ public class RandomWorldGenerator {
 	 * Either of the last two expressions may be used conveniently to calculate the
 	 * ratio for (n,k) given those for (n-1,k) and (n-1,k+1).
 	 */
-	private void make_ratio(final int N, final Vector<Double> ratio) {
+	private static void make_ratio(final int N, final double[] ratio) {
 		int n, k;
-		final Vector<Double> temp = new Vector<>();
+		final double[] temp = new double[N + 1];
 		for (k = 0; k <= N; k++) {
-			temp.add(k, 1.0);
+			temp[k] = 1.0;
 		}
 		for (n = 0; n <= N; n++) {
 			for (k = 0; k + n <= N; k++) {
 				if (n == 0) {
-					ratio.add(pos(N, n, k), 1.0);
+					ratio[pos(N, n, k)] = 1.0;
 				} else {
-					temp.set(k, (temp.get(k).doubleValue() * (temp.get(k + 1).doubleValue() + n + k))
-							/ (temp.get(k).doubleValue() + n + k - 1.0));
+					temp[k] = (temp[k] * (temp[k + 1] + n + k)) / (temp[k] + n + k - 1.0);
 					if ((n % 2) == 0) {
-						ratio.add(pos(N, n / 2, k), temp.get(k));
+						ratio[pos(N, n / 2, k)] = temp[k];
 					}
 				}
 			}
@@ -120,10 +383,99 @@ public class RandomWorldGenerator {
 	 * The 2-dimensional array of ratios is represented in one dimension, so here is
 	 * an index function such that ratio[pos(x,y)] is essentially ratio[2x][y].
 	 */
-	private int pos(final int N, final int x, final int y) {
+	private static int pos(final int N, final int x, final int y) {
 		return ((x * (N + 2 - x)) + y);
 	}
 
+	private void make_state(final Random random) {
+		if (this.ratio == null) {
+			make_state_low_memory(this.sigma, random);
+		} else {
+			make_state(this.sigma, this.ratio, random);
+		}
+	}
+
+	/**
+	 * The cumulative weights for the number of towers in low memory mode. A
+	 * state is a set of k towers, and the number of states of N blocks with k
+	 * towers is the Lah number L(N,k) = C(N-1,k-1) N!/k!. So L(N,k+1)/L(N,k) =
+	 * (N-k)/(k(k+1)). The weights are computed as logarithms and scaled by the
+	 * largest to stay within the range of a double.
+	 *
+	 * @return array where element k-1 is the sum of the weights for 1..k towers.
+	 */
+	private static double[] make_towers(final int N) {
+		final double[] towers = new double[N];
+		double log = 0;
+		double max = 0;
+		for (int k = 1; k <= N; k++) {
+			towers[k - 1] = log;
+			max = Math.max(max, log);
+			log += Math.log(N - k) - Math.log(k) - Math.log(k + 1);
+		}
+		double sum = 0;
+		for (int k = 0; k < N; k++) {
+			sum += Math.exp(towers[k] - max);
+			towers[k] = sum;
+		}
+		return towers;
+	}
+
+	/**
+	 * Make a state in low memory mode. First pick the number of towers k, with
+	 * probability proportional to the number of states with k towers. Then
+	 * shuffle the blocks and cut the sequence into k towers at k-1 of the N-1
+	 * places between two blocks. Every set of k towers comes from exactly k!
+	 * equally likely pairs of permutation and cuts (one for each order of the
+	 * towers), so the state is uniform.
+	 */
+	private void make_state_low_memory(final Sigma sigma, final Random random) {
+		final int N = sigma.N;
+		if (N == 0) {
+			return;
+		}
+		/* The number of towers, by binary search on the cumulative weights */
+		final double r = random.nextDouble() * this.towers[N - 1];
+		int lo = 0;
+		int hi = N - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (this.towers[mid] <= r) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		final int k = lo + 1;
+		/* Shuffle the blocks, inside-out so the previous state does not matter */
+		for (int x = 0; x < N; x++) {
+			final int y = random.nextInt(x + 1);
+			this.perm[x] = this.perm[y];
+			this.perm[y] = x;
+		}
+		/* Pick k-1 of the places 1..N-1 to cut, by a partial shuffle */
+		for (int x = 1; x < N; x++) {
+			this.gaps[x] = x;
+		}
+		for (int x = 1; x < k; x++) {
+			final int y = x + random.nextInt(N - x);
+			final int t = this.gaps[x];
+			this.gaps[x] = this.gaps[y];
+			this.gaps[y] = t;
+			this.cut[this.gaps[x]] = true;
+		}
+		/* Each block is on the one before it, unless a tower starts there */
+		sigma.S[this.perm[0]] = -1;
+		for (int x = 1; x < N; x++) {
+			if (this.cut[x]) {
+				sigma.S[this.perm[x]] = -1;
+				this.cut[x] = false;
+			} else {
+				sigma.S[this.perm[x]] = this.perm[x - 1];
+			}
+		}
+	}
+
 	/**
 	 * To make the state, begin by regarding the blocks as short floating towers,
 	 * and repeatedly take the last one and put ikt on something. It may go on the
@@ -131,7 +483,7 @@ public class RandomWorldGenerator {
 	 * one, or it may go on another (floating or rooted) tower. All destinations
 	 * except for the table have equal probability.
 	 */
-	private void make_state(final Sigma sigma, final Vector<Double> ratio) {
+	private void make_state(final Sigma sigma, final double[] ratio, final Random random) {
 		int x;
 		float r; /* The randomly generated number */
 		float rat; /* The relevant ratio from the array */
@@ -140,30 +492,32 @@ public class RandomWorldGenerator {
 		int b; /* The destination block */
 
 		for (x = 0; x < sigma.N; x++) {
-			sigma.rooted.add(x, new Tower(-1, -1));
-			sigma.floating.add(x, new Tower(x, x));
-			sigma.S.add(x, -1);
+			sigma.rootedTop[x] = -1;
+			sigma.rootedBottom[x] = -1;
+			sigma.floatingTop[x] = x;
+			sigma.floatingBottom[x] = x;
+			sigma.S[x] = -1;
 		} /* Initially, each block is a floating tower */
 		sigma.nrt = 0;
 		sigma.nft = sigma.N;
 		while (sigma.nft-- != 0) {
-			r = this.rand.nextFloat();
+			r = random.nextFloat();
 			choice = sigma.nft + sigma.nrt;
 			rat = Ratio(ratio, sigma.N, sigma.nft, sigma.nrt);
 			p = rat / (rat + choice);
 			if (r <= p) { /* Put the next block on the table */
-				sigma.rooted.get(sigma.nrt).top = sigma.floating.get(sigma.nft).top;
-				sigma.rooted.get(sigma.nrt).bottom = sigma.floating.get(sigma.nft).bottom;
+				sigma.rootedTop[sigma.nrt] = sigma.floatingTop[sigma.nft];
+				sigma.rootedBottom[sigma.nrt] = sigma.floatingBottom[sigma.nft];
 				sigma.nrt++;
 			} else { /* Put the next block on some b */
 				b = (int) Math.round(Math.floor((r - p) / ((1.0 - p) / choice)));
 				if (b < sigma.nrt) { /* Destination is a rooted tower */
-					sigma.S.set(sigma.floating.get(sigma.nft).bottom, sigma.rooted.get(b).top);
-					sigma.rooted.get(b).top = sigma.floating.get(sigma.nft).top;
+					sigma.S[sigma.floatingBottom[sigma.nft]] = sigma.rootedTop[b];
+					sigma.rootedTop[b] = sigma.floatingTop[sigma.nft];
 				} else { /* Destination is a floating tower */
 					b -= sigma.nrt;
-					sigma.S.set(sigma.floating.get(sigma.nft).bottom, sigma.floating.get(b).top);
-					sigma.floating.get(b).top = sigma.floating.get(sigma.nft).top;
+					sigma.S[sigma.floatingBottom[sigma.nft]] = sigma.floatingTop[b];
+					sigma.floatingTop[b] = sigma.floatingTop[sigma.nft];
 				}
 			}
 		}
@@ -177,15 +531,38 @@ public class RandomWorldGenerator {
 	 * the case of an odd-numbered row. This is simply to halve the space required
 	 * to store ratios. Note that N is the number of blocks.
 	 */
-	private float Ratio(final Vector<Double> ratio, final int N, final int x, final int y) {
+	private float Ratio(final double[] ratio, final int N, final int x, final int y) {
 		final int z = pos(N, x / 2, y);
 		if (x % 2 != 0) {
-			return (ratio.get(z + 1).floatValue() + x + y) / (((1 / ratio.get(z).floatValue()) * (x + y - 1)) + 1);
+			return ((float) ratio[z + 1] + x + y) / (((1 / (float) ratio[z]) * (x + y - 1)) + 1);
 		} else {
-			return ratio.get(z).floatValue();
+			return (float) ratio[z];
 		}
 	}
 
+	/**
+	 * Count the generated state in the statistics, if they are kept.
+	 */
+	private void count(final Sigma sigma) {
+		if (this.stats == null) {
+			return;
+		}
+		for (int x = 0; x < sigma.N; x++) {
+			this.state[x] = sigma.S[x] + 1;
+		}
+		final long bucket;
+		if (this.ranker != null) {
+			bucket = this.ranker.rank(this.state) % this.stats.length;
+		} else {
+			long hash = 0;
+			for (int x = 0; x < sigma.N; x++) {
+				hash = IndexedRandom.mix(hash + this.state[x]);
+			}
+			bucket = (hash >>> 1) % this.stats.length;
+		}
+		this.stats[(int) bucket]++;
+	}
+
 	/**
 	 * Convert generated state to a comma-separated string. This matches Slaney's
 	 * original output format.
@@ -194,21 +571,22 @@ public class RandomWorldGenerator {
 	 * @return Slaney-style block configuration list.
 	 */
 	private String print_state(final Sigma sigma) {
-		String out = "";
+		this.out.setLength(0);
 		for (int x = 0; x < sigma.N; x++) {
-			out += sigma.S.get(x) + 1;
+			this.out.append(sigma.S[x] + 1);
 			if (x < sigma.N - 1) {
-				out += ",";
+				this.out.append(',');
 			}
 		}
 
-		return out;
+		return this.out.toString();
 	}
 
 	/**
 	 * Function to dump some statistics about the states generated. The raw output
 	 * is useful for verifying that states are being generated uniformly, using
-	 * MATLAB for instance.
+	 * MATLAB for instance. The counts are in the order of the ranks of the states,
+	 * see {@link StateRanker}.
 	 *
 	 * @author D.Singh
 	 */
@@ -216,18 +594,18 @@ public class RandomWorldGenerator {
 		if (this.stats == null) {
 			return "No statistics are available. Must be enabled at startup.";
 		}
-		String raw = "";
-		int total = 0;
+		final StringBuilder raw = new StringBuilder();
+		long total = 0;
+		for (int i = 0; i < this.stats.length; i++) {
+			if (i < 100) {
+				raw.append(this.stats[i]).append(' ');
+			}
+			total += this.stats[i];
+		}
 		double min = 1;
 		double max = 0;
-		int rawlimit = 100;
-		for (final Integer i : this.stats.values()) {
-			raw += (rawlimit > 0) ? i.intValue() + " " : "";
-			total += i;
-			rawlimit--;
-		}
-		for (final Integer i : this.stats.values()) {
-			final double ratio = (i.doubleValue() / total);
+		for (final long i : this.stats) {
+			final double ratio = ((double) i / total);
 			if (ratio < min) {
 				min = ratio;
 			}
@@ -236,37 +614,100 @@ public class RandomWorldGenerator {
 			}
 		}
 
-		String str = "states=" + String.format("%05d", this.stats.size());
-		str += ", expectancy=" + String.format("%6.4f", (1.0 / this.stats.size()));
+		String str = (this.statsExact ? "states=" : "buckets=") + String.format("%05d", this.stats.length);
+		str += ", expectancy=" + String.format("%6.4f", (1.0 / this.stats.length));
 		str += ", actual range=[" + String.format("%6.4f", min) + "," + String.format("%6.4f", max) + "]";
 		str += ", raw100=[ " + raw + "]";
 
 		return str;
 	}
 
-	private final class Tower {
-		int top;
-		int bottom;
+	/**
+	 * A {@link Random} that takes its bits from a SplitMix64 sequence, seeded
+	 * from the seed and an index. Mixing the two gives unrelated streams for
+	 * neighbouring indices. The sequence is the same as that of a
+	 * {@link java.util.SplittableRandom} with the same seed, but the state is a
+	 * single long, so reseeding does not allocate.
+	 */
+	@SuppressWarnings("serial")
+	private static final class IndexedRandom extends Random {
+		private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+		private long state;
+
+		void reseed(final long seed, final long index) {
+			this.state = mix(seed ^ mix(index + GOLDEN_GAMMA));
+		}
+
+		@Override
+		protected int next(final int bits) {
+			return nextInt() >>> (32 - bits);
+		}
+
+		@Override
+		public int nextInt() {
+			long z = (this.state += GOLDEN_GAMMA);
+			z = (z ^ (z >>> 33)) * 0x62A9D9ED799705F5L;
+			return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+		}
+
+		@Override
+		public long nextLong() {
+			long z = (this.state += GOLDEN_GAMMA);
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
 
-		public Tower(final int t, final int b) {
-			this.top = t;
-			this.bottom = b;
+		@Override
+		public double nextDouble() {
+			return (nextLong() >>> 11) * 0x1.0p-53;
+		}
+
+		@Override
+		public int nextInt(final int bound) {
+			int r = nextInt();
+			final int m = bound - 1;
+			if ((bound & m) == 0) {
+				r &= m;
+			} else {
+				for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) {
+					// rejected, too close to the top of the range.
+				}
+			}
+			return r;
+		}
+
+		/**
+		 * The 64-bit finalizer of MurmurHash3.
+		 */
+		private static long mix(long z) {
+			z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+			z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+			return z ^ (z >>> 33);
 		}
 	}
 
+	/**
+	 * The state being built. A tower is stored as its top and bottom block, in
+	 * the arrays for rooted (on the table) and floating towers.
+	 */
 	private final class Sigma {
 		int N;
-		Vector<Integer> S;
+		int[] S;
 		int nrt;
 		int nft;
-		Vector<Tower> rooted;
-		Vector<Tower> floating;
+		int[] rootedTop;
+		int[] rootedBottom;
+		int[] floatingTop;
+		int[] floatingBottom;
 
 		public Sigma(final int N) {
 			this.N = N;
-			this.S = new Vector<>();
-			this.rooted = new Vector<>();
-			this.floating = new Vector<>();
+			this.S = new int[N];
+			this.rootedTop = new int[N];
+			this.rootedBottom = new int[N];
+			this.floatingTop = new int[N];
+			this.floatingBottom = new int[N];
 		}
 	}
 }
@@ -0,0 +1,126 @@
+package worldgenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped file of states in the binary format of {@link StateWriter}.
+ * Getting a state only reads its own bytes, so any state can be picked without
+ * reading or parsing the rest of the file.
+ * <p>
+ * The file is mapped in chunks of at most 1 GiB, so it can hold more than 2 GiB
+ * of states. A corpus is only read, and can be used by several threads.
+ */
+public class StateCorpus {
+	private static final int CHUNK_SIZE = 1 << 30;
+
+	private final int N;
+	private final long count;
+	private final int width;
+	private final int stateBytes;
+	private final long perChunk;
+	private final ByteBuffer[] chunks;
+
+	/**
+	 * Map a corpus file.
+	 *
+	 * @param path the file
+	 * @throws IOException if the file can not be read or is not a corpus.
+	 */
+	public StateCorpus(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final ByteBuffer header = ByteBuffer.allocate(StateWriter.HEADER);
+			while (header.hasRemaining()) {
+				if (channel.read(header, header.position()) < 0) {
+					throw new IOException(path + " is too short for a corpus header");
+				}
+			}
+			header.flip();
+			if (header.getInt() != StateWriter.MAGIC) {
+				throw new IOException(path + " is not a corpus of states");
+			}
+			this.N = header.getInt();
+			this.count = header.getLong();
+			if (this.N <= 0 || this.count < 0) {
+				throw new IOException(path + " has a bad header: " + this.N + " blocks, " + this.count + " states");
+			}
+			this.width = StateWriter.width(this.N);
+			this.stateBytes = this.N * this.width;
+			if (channel.size() < StateWriter.HEADER + this.count * this.stateBytes) {
+				throw new IOException(path + " is too short for " + this.count + " states");
+			}
+
+			this.perChunk = Math.max(1, CHUNK_SIZE / this.stateBytes);
+			this.chunks = new ByteBuffer[(int) ((this.count + this.perChunk - 1) / this.perChunk)];
+			for (int c = 0; c < this.chunks.length; c++) {
+				final long states = Math.min(this.perChunk, this.count - c * this.perChunk);
+				this.chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY,
+						StateWriter.HEADER + c * this.perChunk * this.stateBytes, states * this.stateBytes);
+			}
+		}
+	}
+
+	/**
+	 * Check if a file is a corpus, by its first bytes.
+	 *
+	 * @param path the file
+	 * @return true if the file starts with {@link StateWriter#MAGIC}.
+	 * @throws IOException if the file can not be read.
+	 */
+	public static boolean isCorpus(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				// read the first 4 bytes, if there are that many.
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == StateWriter.MAGIC;
+		}
+	}
+
+	/**
+	 * @return the number of blocks in each state.
+	 */
+	public int size() {
+		return this.N;
+	}
+
+	/**
+	 * @return the number of states.
+	 */
+	public long count() {
+		return this.count;
+	}
+
+	/**
+	 * Get a state.
+	 *
+	 * @param k   the number of the state, from 0.
+	 * @param out array of at least N elements. Element i is set to the block
+	 *            that block i+1 is on, 0 for the table.
+	 * @return out
+	 * @throws IndexOutOfBoundsException if there is no state k.
+	 */
+	public int[] get(final long k, final int[] out) {
+		if (k < 0 || k >= this.count) {
+			throw new IndexOutOfBoundsException("state " + k + " is not in [0," + this.count + ")");
+		}
+		final ByteBuffer chunk = this.chunks[(int) (k / this.perChunk)];
+		int offset = (int) (k % this.perChunk) * this.stateBytes;
+		for (int x = 0; x < this.N; x++, offset += this.width) {
+			switch (this.width) {
+			case 1:
+				out[x] = chunk.get(offset) & 0xFF;
+				break;
+			case 2:
+				out[x] = chunk.getShort(offset) & 0xFFFF;
+				break;
+			default:
+				out[x] = chunk.getInt(offset);
+			}
+		}
+		return out;
+	}
+}
@@ -0,0 +1,105 @@
+package worldgenerator;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Enumerates all states of N blocks, in the order of their ranks (see
+ * {@link StateRanker}). The enumeration splits on ranges of ranks, so a
+ * parallel stream spreads it over all cores.
+ * <p>
+ * The states are given in the format of
+ * {@link RandomWorldGenerator#nextState(int[])}. To avoid allocating, every
+ * spliterator reuses one array for all its states: a consumer that keeps a
+ * state must copy it.
+ */
+public class StateEnumerator implements Spliterator<int[]> {
+	/**
+	 * Ranges are not split below this number of states.
+	 */
+	private static final long MIN_SPLIT = 1024;
+
+	private final int N;
+	private final StateRanker ranker;
+	private final int[] state;
+	private long next;
+	private final long end;
+
+	/**
+	 * Enumerator for all states of N blocks.
+	 *
+	 * @param N number of blocks, at most {@link StateRanker#MAX_BLOCKS}
+	 */
+	public StateEnumerator(final int N) {
+		this(N, 0, -1);
+	}
+
+	/**
+	 * Enumerator for the states of N blocks with ranks in [from, to).
+	 *
+	 * @param N    number of blocks, at most {@link StateRanker#MAX_BLOCKS}
+	 * @param from first rank
+	 * @param to   rank after the last, or -1 for all states from the first
+	 */
+	public StateEnumerator(final int N, final long from, final long to) {
+		this.N = N;
+		this.ranker = new StateRanker(N);
+		this.state = new int[N];
+		this.next = from;
+		this.end = (to < 0) ? this.ranker.count() : to;
+		if (from < 0 || from > this.end || this.end > this.ranker.count()) {
+			throw new IllegalArgumentException(
+					"[" + from + "," + this.end + ") is not a range in [0," + this.ranker.count() + ")");
+		}
+	}
+
+	/**
+	 * Stream all states of N blocks.
+	 *
+	 * @param N        number of blocks, at most {@link StateRanker#MAX_BLOCKS}
+	 * @param parallel true for a parallel stream
+	 * @return stream of reused arrays, see {@link StateEnumerator}.
+	 */
+	public static Stream<int[]> states(final int N, final boolean parallel) {
+		return StreamSupport.stream(new StateEnumerator(N), parallel);
+	}
+
+	@Override
+	public boolean tryAdvance(final Consumer<? super int[]> action) {
+		if (this.next >= this.end) {
+			return false;
+		}
+		action.accept(this.ranker.unrank(this.next++, this.state));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(final Consumer<? super int[]> action) {
+		while (this.next < this.end) {
+			action.accept(this.ranker.unrank(this.next++, this.state));
+		}
+	}
+
+	@Override
+	public Spliterator<int[]> trySplit() {
+		final long size = this.end - this.next;
+		if (size < 2 * MIN_SPLIT) {
+			return null;
+		}
+		final long from = this.next;
+		this.next += size / 2;
+		return new StateEnumerator(this.N, from, this.next);
+	}
+
+	@Override
+	public long estimateSize() {
+		return this.end - this.next;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | SIZED | SUBSIZED | NONNULL;
+	}
+}
@@ -0,0 +1,153 @@
+package worldgenerator;
+
+/**
+ * Numbers the states of N blocks from 0 to g(N,0)-1, where g(N,0) is the number
+ * of states (see {@link RandomWorldGenerator}).
+ * <p>
+ * A state is seen as the choices made by the generator: the floating towers are
+ * taken from the last one down, and each goes either on the table or on one of
+ * the n+k towers that are left. With n floating towers and k on the table,
+ * there are g(n-1,k+1) states that put the next tower on the table, and
+ * g(n-1,k) for each of the other destinations. The rank of a state is its
+ * position when these choices are ordered as in the generator: the table
+ * first, then the towers on the table, then the floating towers.
+ * <p>
+ * Ranks are longs, so this only works up to {@link #MAX_BLOCKS} blocks. An
+ * instance reuses its working storage and is not thread safe.
+ */
+public class StateRanker {
+	/**
+	 * The largest number of blocks for which the states can be ranked.
+	 */
+	public static final int MAX_BLOCKS = 18;
+
+	private final int N;
+	/**
+	 * g(n,k) at [n][k], for n + k <= N.
+	 */
+	private final long[][] g;
+	private final int[] rootedTop;
+	private final int[] floatingTop;
+	/**
+	 * The tower that a block is the top of: the index for a tower on the table,
+	 * -1-index for a floating tower, or COVERED.
+	 */
+	private final int[] towerOf;
+	private static final int COVERED = Integer.MIN_VALUE;
+
+	/**
+	 * Ranker for states of N blocks.
+	 *
+	 * @param N number of blocks
+	 * @throws IllegalArgumentException if N is negative or larger than
+	 *                                  {@link #MAX_BLOCKS}.
+	 */
+	public StateRanker(final int N) {
+		if (N < 0 || N > MAX_BLOCKS) {
+			throw new IllegalArgumentException("can only rank states of 0 to " + MAX_BLOCKS + " blocks");
+		}
+		this.N = N;
+		this.g = new long[N + 1][];
+		for (int n = 0; n <= N; n++) {
+			this.g[n] = new long[N - n + 1];
+			for (int k = 0; k + n <= N; k++) {
+				this.g[n][k] = (n == 0) ? 1 : this.g[n - 1][k + 1] + (n - 1 + k) * this.g[n - 1][k];
+			}
+		}
+		this.rootedTop = new int[N];
+		this.floatingTop = new int[N];
+		this.towerOf = new int[N];
+	}
+
+	/**
+	 * @return the number of states, g(N,0).
+	 */
+	public long count() {
+		return this.g[this.N][0];
+	}
+
+	/**
+	 * Get the rank of a state.
+	 *
+	 * @param state array of at least N elements. Element i is the block that
+	 *              block i+1 is on, 0 for the table.
+	 * @return the rank, in [0, {@link #count()}).
+	 * @throws IllegalArgumentException if the state is not valid.
+	 */
+	public long rank(final int[] state) {
+		for (int x = 0; x < this.N; x++) {
+			this.floatingTop[x] = x;
+			this.towerOf[x] = -1 - x;
+		}
+		int nrt = 0;
+		long rank = 0;
+		for (int x = this.N - 1; x >= 0; x--) {
+			final int top = this.floatingTop[x];
+			final int on = state[x] - 1;
+			if (on == -1) {
+				this.rootedTop[nrt] = top;
+				this.towerOf[top] = nrt;
+				nrt++;
+				continue;
+			}
+			if (on < 0 || on >= this.N || this.towerOf[on] == COVERED) {
+				throw new IllegalArgumentException("block " + (x + 1) + " is not on the table or a clear block");
+			}
+			final int tower = this.towerOf[on];
+			final int b;
+			if (tower >= 0) {
+				b = tower;
+				this.rootedTop[tower] = top;
+			} else {
+				final int floating = -1 - tower;
+				if (floating >= x) {
+					throw new IllegalArgumentException("block " + (x + 1) + " is on a loop");
+				}
+				b = nrt + floating;
+				this.floatingTop[floating] = top;
+			}
+			this.towerOf[on] = COVERED;
+			this.towerOf[top] = tower;
+			rank += this.g[x][nrt + 1] + b * this.g[x][nrt];
+		}
+		return rank;
+	}
+
+	/**
+	 * Get the state with a given rank.
+	 *
+	 * @param rank the rank, in [0, {@link #count()}).
+	 * @param out  array of at least N elements, see {@link #rank(int[])}.
+	 * @return out
+	 */
+	public int[] unrank(long rank, final int[] out) {
+		if (rank < 0 || rank >= count()) {
+			throw new IllegalArgumentException("rank " + rank + " is not in [0," + count() + ")");
+		}
+		for (int x = 0; x < this.N; x++) {
+			this.floatingTop[x] = x;
+			out[x] = 0;
+		}
+		int nrt = 0;
+		for (int x = this.N - 1; x >= 0; x--) {
+			final int top = this.floatingTop[x];
+			final long table = this.g[x][nrt + 1];
+			if (rank < table) {
+				this.rootedTop[nrt] = top;
+				nrt++;
+				continue;
+			}
+			rank -= table;
+			final int b = (int) (rank / this.g[x][nrt]);
+			rank %= this.g[x][nrt];
+			if (b < nrt) {
+				out[x] = this.rootedTop[b] + 1;
+				this.rootedTop[b] = top;
+			} else {
+				out[x] = this.floatingTop[b - nrt] + 1;
+				this.floatingTop[b - nrt] = top;
+			}
+		}
+		return out;
+	}
+}
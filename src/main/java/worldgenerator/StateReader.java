@@ -0,0 +1,216 @@
+package worldgenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads Slaney-style states from text. The numbers are parsed straight from the
+ * bytes of the channel into an int[]; they can be separated by commas and
+ * white space, so both the output of {@link RandomWorldGenerator} and plain
+ * lists of numbers can be read.
+ * <p>
+ * A file either holds a single state, which can be spread over several lines
+ * and is read with {@link #readAll()}, or one state per line, which are read
+ * with {@link #next()}. Empty lines are skipped.
+ * <p>
+ * A file opened with {@link #open(Path)} is mapped in chunks of at most 1 GiB,
+ * like {@link StateCorpus}, and parsed straight from the mapping. Other
+ * channels are read through a buffer.
+ */
+public class StateReader implements Closeable {
+	private static final int CHUNK_SIZE = 1 << 30;
+
+	/**
+	 * The channel to read from, or null if the file is mapped.
+	 */
+	private final ReadableByteChannel channel;
+	/**
+	 * The mapped chunks of the file that are not parsed yet, or null if reading
+	 * from a channel.
+	 */
+	private final ByteBuffer[] chunks;
+	private int chunk;
+	/**
+	 * The bytes being parsed: a chunk of the file, or the buffer that the
+	 * channel is read into.
+	 */
+	private ByteBuffer buffer;
+	/**
+	 * The numbers of the state being read.
+	 */
+	private int[] numbers = new int[64];
+	private int line = 1;
+
+	/**
+	 * Reader for states from a channel.
+	 *
+	 * @param channel the channel. It is closed when the reader is closed.
+	 */
+	public StateReader(final ReadableByteChannel channel) {
+		this.channel = channel;
+		this.chunks = null;
+		this.buffer = ByteBuffer.allocate(1 << 16);
+		this.buffer.flip();
+	}
+
+	private StateReader(final ByteBuffer[] chunks) {
+		this.channel = null;
+		this.chunks = chunks;
+		this.buffer = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Open a file for reading states.
+	 *
+	 * @param path the file
+	 * @return reader for the file
+	 * @throws IOException if the file can not be opened.
+	 */
+	public static StateReader open(final Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			final long size = channel.size();
+			final ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_SIZE - 1) / CHUNK_SIZE)];
+			for (int c = 0; c < chunks.length; c++) {
+				final long position = (long) c * CHUNK_SIZE;
+				chunks[c] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+			}
+			// the mapping stays valid after the channel is closed.
+			return new StateReader(chunks);
+		}
+	}
+
+	/**
+	 * Read all remaining numbers as one state.
+	 *
+	 * @return the numbers, possibly none.
+	 * @throws IOException if reading failed or there is something else than a
+	 *                     number, comma or white space.
+	 */
+	public int[] readAll() throws IOException {
+		final int count = parse(false);
+		return Arrays.copyOf(this.numbers, Math.max(count, 0));
+	}
+
+	/**
+	 * Read the numbers on the next line that has any.
+	 *
+	 * @return the numbers, or null if there are no more.
+	 * @throws IOException if reading failed or there is something else than a
+	 *                     number, comma or white space.
+	 */
+	public int[] next() throws IOException {
+		final int count = parse(true);
+		return (count < 0) ? null : Arrays.copyOf(this.numbers, count);
+	}
+
+	/**
+	 * Skip the next line that has numbers.
+	 *
+	 * @return false if there are no more.
+	 * @throws IOException if reading failed or there is something else than a
+	 *                     number, comma or white space.
+	 */
+	public boolean skip() throws IOException {
+		return parse(true) >= 0;
+	}
+
+	/**
+	 * Parse numbers into {@link #numbers}.
+	 *
+	 * @param line true to stop at the end of a line with numbers.
+	 * @return the number of numbers, or -1 if the end was reached before any
+	 *         number.
+	 */
+	private int parse(final boolean line) throws IOException {
+		int count = 0;
+		long value = 0;
+		boolean digits = false;
+		boolean negative = false;
+		while (true) {
+			if (!this.buffer.hasRemaining()) {
+				if (!fill()) {
+					if (negative && !digits) {
+						throw new IOException("'-' without a number in line " + this.line);
+					}
+					if (digits) {
+						add(count++, negative ? -value : value);
+					}
+					return (count == 0) ? -1 : count;
+				}
+				continue;
+			}
+			final byte c = this.buffer.get();
+			if (c >= '0' && c <= '9') {
+				value = value * 10 + (c - '0');
+				if (value > Integer.MAX_VALUE) {
+					throw new IOException("number too large in line " + this.line);
+				}
+				digits = true;
+			} else if (c == '-' && !digits && !negative) {
+				negative = true;
+			} else if (c == ',' || c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+				if (digits) {
+					add(count++, negative ? -value : value);
+				} else if (negative) {
+					throw new IOException("'-' without a number in line " + this.line);
+				}
+				value = 0;
+				digits = false;
+				negative = false;
+				if (c == '\n') {
+					this.line++;
+					if (line && count > 0) {
+						return count;
+					}
+				}
+			} else {
+				throw new IOException("unexpected character '" + (char) c + "' in line " + this.line);
+			}
+		}
+	}
+
+	/**
+	 * Get more bytes to parse in {@link #buffer}: the next chunk of the file,
+	 * or what the channel gives.
+	 *
+	 * @return false at the end.
+	 */
+	private boolean fill() throws IOException {
+		if (this.chunks != null) {
+			if (this.chunk == this.chunks.length) {
+				return false;
+			}
+			this.buffer = this.chunks[this.chunk];
+			// do not keep chunks that were parsed.
+			this.chunks[this.chunk++] = null;
+			return true;
+		}
+		this.buffer.clear();
+		final int read = this.channel.read(this.buffer);
+		this.buffer.flip();
+		return read >= 0;
+	}
+
+	private void add(final int index, final long value) {
+		if (index == this.numbers.length) {
+			this.numbers = Arrays.copyOf(this.numbers, 2 * index);
+		}
+		this.numbers[index] = (int) value;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.channel != null) {
+			this.channel.close();
+		} else {
+			Arrays.fill(this.chunks, null);
+			this.buffer = ByteBuffer.allocate(0);
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package worldgenerator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes states to a channel, through large buffers. Full buffers are written
+ * by a separate thread, so the states can be generated while the previous ones
+ * are written.
+ * <p>
+ * There are two formats:
+ * <ul>
+ * <li>{@link Format#TEXT}: one state per line, in Slaney's comma separated
+ * format, as printed by {@link RandomWorldGenerator#nextState()}.
+ * <li>{@link Format#BINARY}: a header of 16 bytes, followed by the states. The
+ * header is the int {@link #MAGIC}, the int N and the long number of states.
+ * Every state is N unsigned values of {@link #width(int)} bytes each; value i
+ * is the block that block i+1 is on, 0 for the table. All numbers are big
+ * endian.
+ * </ul>
+ * A writer is not thread safe; states must be written one at a time, in order.
+ */
+public class StateWriter implements AutoCloseable {
+	/**
+	 * The output formats.
+	 */
+	public enum Format {
+		TEXT, BINARY
+	}
+
+	/**
+	 * The first 4 bytes of the binary format, "BWST".
+	 */
+	public static final int MAGIC = 0x42575354;
+	/**
+	 * The size in bytes of the header of the binary format.
+	 */
+	public static final int HEADER = 16;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final int BUFFERS = 4;
+	/**
+	 * Tells the writing thread to stop.
+	 */
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final WritableByteChannel channel;
+	private final Format format;
+	private final int N;
+	private final int width;
+	private final long count;
+	private long written;
+	private ByteBuffer buffer;
+	private final BlockingQueue<ByteBuffer> full = new ArrayBlockingQueue<>(BUFFERS);
+	private final BlockingQueue<ByteBuffer> empty = new ArrayBlockingQueue<>(BUFFERS);
+	private final Thread thread;
+	private volatile IOException error;
+
+	/**
+	 * Writer for states of N blocks.
+	 *
+	 * @param channel channel to write to. It is closed when the writer is
+	 *                closed.
+	 * @param format  the output format
+	 * @param N       number of blocks
+	 * @param count   the number of states that will be written. The binary
+	 *                format needs this for its header.
+	 * @throws IOException if the header can not be written.
+	 */
+	public StateWriter(final WritableByteChannel channel, final Format format, final int N, final long count)
+			throws IOException {
+		this.channel = channel;
+		this.format = format;
+		this.N = N;
+		this.width = width(N);
+		this.count = count;
+		for (int n = 0; n < BUFFERS; n++) {
+			this.empty.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+		}
+		this.buffer = this.empty.poll();
+		if (format == Format.BINARY) {
+			this.buffer.putInt(MAGIC).putInt(N).putLong(count);
+		}
+		this.thread = new Thread(this::drain, "StateWriter");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * The number of bytes for a block number in the binary format.
+	 *
+	 * @param N number of blocks
+	 * @return 1, 2 or 4.
+	 */
+	public static int width(final int N) {
+		return (N < 0x100) ? 1 : (N < 0x10000) ? 2 : 4;
+	}
+
+	/**
+	 * Write a state.
+	 *
+	 * @param state array of at least N elements. Element i is the block that
+	 *              block i+1 is on, 0 for the table.
+	 * @throws IOException if writing failed, possibly for an earlier state.
+	 */
+	public void write(final int[] state) throws IOException {
+		if (this.format == Format.BINARY) {
+			reserve(this.N * this.width);
+			for (int x = 0; x < this.N; x++) {
+				switch (this.width) {
+				case 1:
+					this.buffer.put((byte) state[x]);
+					break;
+				case 2:
+					this.buffer.putShort((short) state[x]);
+					break;
+				default:
+					this.buffer.putInt(state[x]);
+				}
+			}
+		} else {
+			for (int x = 0; x < this.N; x++) {
+				reserve(12);
+				if (x > 0) {
+					this.buffer.put((byte) ',');
+				}
+				putDigits(state[x]);
+			}
+			reserve(1);
+			this.buffer.put((byte) '\n');
+		}
+		this.written++;
+	}
+
+	/**
+	 * Put a non-negative number in the buffer as decimal digits.
+	 */
+	private void putDigits(final int value) {
+		int div = 1;
+		while (value / div >= 10) {
+			div *= 10;
+		}
+		for (; div > 0; div /= 10) {
+			this.buffer.put((byte) ('0' + (value / div) % 10));
+		}
+	}
+
+	/**
+	 * Make sure there is room for the given number of bytes, handing the buffer
+	 * to the writing thread if there is not.
+	 */
+	private void reserve(final int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes) {
+			flush();
+			if (bytes > this.buffer.capacity()) {
+				// one state does not fit; the writing thread drops this buffer.
+				this.empty.add(this.buffer);
+				this.buffer = ByteBuffer.allocateDirect(bytes);
+			}
+		}
+	}
+
+	/**
+	 * Hand the buffer to the writing thread and take an empty one.
+	 */
+	private void flush() throws IOException {
+		check();
+		this.buffer.flip();
+		try {
+			this.full.put(this.buffer);
+			this.buffer = this.empty.take();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while writing states", e);
+		}
+	}
+
+	/**
+	 * Throw if the writing thread failed. A new exception every time, as both
+	 * a write and the close after it can throw it.
+	 */
+	private void check() throws IOException {
+		if (this.error != null) {
+			throw new IOException(this.error.getMessage(), this.error);
+		}
+	}
+
+	/**
+	 * The writing thread. Writes full buffers and returns them as empty.
+	 */
+	private void drain() {
+		try {
+			for (ByteBuffer full = this.full.take(); full != END; full = this.full.take()) {
+				try {
+					if (this.error == null) {
+						while (full.hasRemaining()) {
+							this.channel.write(full);
+						}
+					}
+				} catch (final IOException e) {
+					this.error = e;
+				}
+				if (full.capacity() == BUFFER_SIZE) {
+					full.clear();
+					this.empty.put(full);
+				}
+			}
+		} catch (final InterruptedException e) {
+			this.error = new IOException("interrupted while writing states", e);
+		}
+	}
+
+	/**
+	 * Write what is left, wait until everything is written and close the
+	 * channel.
+	 *
+	 * @throws IOException if writing failed, or if a binary file got a different
+	 *                     number of states than its header says.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			stop();
+		}
+		check();
+		if (this.format == Format.BINARY && this.written != this.count) {
+			throw new IOException("wrote " + this.written + " states but the header says " + this.count);
+		}
+	}
+
+	/**
+	 * Stop the writing thread, wait for it and close the channel. Also done if
+	 * flushing failed, so that the thread and its buffers do not stay around. If
+	 * this thread is interrupted the writing thread is interrupted too, instead
+	 * of being told to finish.
+	 */
+	private void stop() throws IOException {
+		boolean interrupted = Thread.interrupted();
+		try {
+			if (interrupted) {
+				this.thread.interrupt();
+			} else {
+				try {
+					this.full.put(END);
+				} catch (final InterruptedException e) {
+					interrupted = true;
+					this.thread.interrupt();
+				}
+			}
+			while (true) {
+				try {
+					this.thread.join();
+					break;
+				} catch (final InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			this.channel.close();
+		}
+	}
+}
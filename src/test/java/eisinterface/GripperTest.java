@@ -0,0 +1,80 @@
+package eisinterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import eis.exceptions.ActException;
+import environment.BlocksWorldModel;
+
+/**
+ * Tests for the percepts of the {@link Gripper}.
+ */
+public class GripperTest {
+	/**
+	 * 1 on 2 on the table, 3 and 4 on the table.
+	 */
+	private static final int[] START = { 2, 0, 0, 0 };
+
+	@Test
+	public void testOn() throws ActException {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final Gripper gripper = new Gripper(model);
+		final List<List<String>> first = gripper.on();
+		assertEquals(Arrays.asList(Arrays.asList("b1", "b2"), Arrays.asList("b2", "table"),
+				Arrays.asList("b3", "table"), Arrays.asList("b4", "table")), first);
+		// no change, same list.
+		assertSame(first, gripper.on());
+
+		gripper.move("b3", "b1");
+		final List<List<String>> second = gripper.on();
+		assertNotSame(first, second);
+		assertEquals(Arrays.asList("b3", "b1"), second.get(2));
+		// the percepts of the other blocks are the same objects.
+		assertSame(first.get(0), second.get(0));
+		assertSame(first.get(1), second.get(1));
+		assertSame(first.get(3), second.get(3));
+		// the earlier list was not changed.
+		assertEquals(Arrays.asList("b3", "table"), first.get(2));
+		assertSame(second, gripper.on());
+	}
+
+	@Test
+	public void testOnAfterReset() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final Gripper gripper = new Gripper(model);
+		gripper.on();
+		model.reset(new int[] { 0, 1 });
+		assertEquals(Arrays.asList(Arrays.asList("b1", "table"), Arrays.asList("b2", "b1")), gripper.on());
+	}
+
+	@Test
+	public void testStateHash() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final Gripper gripper = new Gripper(model, true);
+		assertHalves(model.getStateHash(), gripper.statehash());
+		model.move(1, 3);
+		assertHalves(model.getStateHash(), gripper.statehash());
+	}
+
+	@Test
+	public void testNoStateHash() {
+		assertTrue(new Gripper(new BlocksWorldModel(START)).statehash().isEmpty());
+	}
+
+	/**
+	 * Check that the percept is the hash split in its high and low half.
+	 */
+	private static void assertHalves(final long hash, final List<List<Integer>> percept) {
+		assertEquals(1, percept.size());
+		final List<Integer> halves = percept.get(0);
+		assertEquals(Arrays.asList((int) (hash >>> 32), (int) hash), halves);
+		assertEquals(hash, ((long) halves.get(0) << 32) | (halves.get(1) & 0xFFFFFFFFL));
+	}
+}
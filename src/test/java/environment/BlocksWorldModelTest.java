@@ -0,0 +1,310 @@
+package environment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Tests for executing a sequence of moves with
+ * {@link BlocksWorldModel#move(int[], int[])}.
+ */
+public class BlocksWorldModelTest {
+	/**
+	 * 1 on 2 on the table, 3 and 4 on the table.
+	 */
+	private static final int[] START = { 2, 0, 0, 0 };
+
+	@Test
+	public void testMoves() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		model.move(new int[] { 1, 2, 1 }, new int[] { 0, 3, 2 });
+		assertArrayEquals(new int[] { 2, 3, 0, 0 }, model.getState());
+	}
+
+	@Test
+	public void testMoveBlockClearedEarlier() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		// 2 is covered at the start, but clear after the first move.
+		model.move(new int[] { 1, 2 }, new int[] { 3, 4 });
+		assertArrayEquals(new int[] { 3, 4, 0, 0 }, model.getState());
+	}
+
+	@Test
+	public void testMoveCoveredBlock() {
+		assertRejected(new int[] { 2 }, new int[] { 3 });
+	}
+
+	@Test
+	public void testMoveOntoCoveredBlock() {
+		assertRejected(new int[] { 3 }, new int[] { 2 });
+	}
+
+	@Test
+	public void testMoveOntoItself() {
+		assertRejected(new int[] { 1, 3 }, new int[] { 0, 3 });
+	}
+
+	@Test
+	public void testTargetCoveredByEarlierMove() {
+		assertRejected(new int[] { 3, 4 }, new int[] { 1, 1 });
+	}
+
+	@Test
+	public void testBlockCoveredByEarlierMove() {
+		assertRejected(new int[] { 3, 4 }, new int[] { 4, 0 });
+	}
+
+	@Test
+	public void testUnknownBlock() {
+		assertRejected(new int[] { 1, 5 }, new int[] { 0, 0 });
+	}
+
+	@Test
+	public void testRejectAfterEarlierPlan() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		model.move(new int[] { 1 }, new int[] { 0 });
+		// the simulation of the first plan must not leak into the second.
+		try {
+			model.move(new int[] { 3, 4 }, new int[] { 2, 2 });
+			fail("target covered by the first move was accepted");
+		} catch (final IllegalArgumentException e) {
+			assertArrayEquals(new int[] { 0, 0, 0, 0 }, model.getState());
+		}
+	}
+
+	@Test
+	public void testFreeStacks() {
+		// 1 on 2 on 3. The bottom block of a start state stands at the stack with
+		// its own number, so only stack 3 is taken.
+		final BlocksWorldModel model = new BlocksWorldModel(new int[] { 2, 3, 0 });
+		assertStacks(model, 0, 3, 3, 3);
+		// moves to the table take the lowest free stack.
+		model.move(1, 0);
+		assertStacks(model, 1, 0, 3, 3);
+		model.move(2, 0);
+		assertStacks(model, 2, 0, 1, 3);
+		// emptying a stack frees it again, also above the lowest free one.
+		model.move(3, 1);
+		assertStacks(model, 2, 0, 1, 0);
+		model.move(2, 3);
+		assertStacks(model, 1, 0, 0, 0);
+		model.move(2, 0);
+		assertStacks(model, 2, 0, 1, 0);
+		model.move(3, 0);
+		assertStacks(model, 3, 0, 1, 2);
+		// from the table to the table: the old stack is freed after taking a new one.
+		model.move(3, 0);
+		assertStacks(model, 2, 0, 1, 3);
+	}
+
+	@Test
+	public void testFork() {
+		final BlocksWorldModel parent = new BlocksWorldModel(START);
+		final int[] events = new int[1];
+		parent.addListener(e -> events[0]++);
+		events[0] = 0;
+		final long version = parent.getVersion();
+		final long hash = parent.getStateHash();
+
+		final BlocksWorldModel fork = parent.fork();
+		assertArrayEquals(START, fork.getState());
+		assertEquals(hash, fork.getStateHash());
+		fork.move(1, 3);
+		fork.move(new int[] { 2, 4 }, new int[] { 0, 2 });
+		fork.getBlocks();
+		assertArrayEquals(new int[] { 3, 0, 0, 2 }, fork.getState());
+
+		assertArrayEquals(START, parent.getState());
+		assertEquals(version, parent.getVersion());
+		assertEquals(hash, parent.getStateHash());
+		assertEquals(0, events[0]);
+		assertFalse("the parent made its geometry", parent.hasGeometry());
+
+		// and the other way around.
+		parent.move(1, 0);
+		assertArrayEquals(new int[] { 3, 0, 0, 2 }, fork.getState());
+	}
+
+	@Test
+	public void testForkKeepsParentGeometry() {
+		final BlocksWorldModel parent = new BlocksWorldModel(START);
+		final Cube3D cube = parent.get(1);
+		final Point3D center = cube.getCenterPoint();
+		final BlocksWorldModel fork = parent.fork();
+		fork.move(1, 3);
+		assertNotSame(cube, fork.get(1));
+		assertSame(cube, parent.get(1));
+		assertEquals(center.getX(), cube.getCenterPoint().getX(), 0);
+		assertEquals(center.getY(), cube.getCenterPoint().getY(), 0);
+		assertEquals(center.getZ(), cube.getCenterPoint().getZ(), 0);
+	}
+
+	@Test
+	public void testStateHash() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		assertHash(model);
+		model.move(1, 0);
+		assertHash(model);
+		model.move(new int[] { 2, 3, 1 }, new int[] { 4, 2, 3 });
+		assertHash(model);
+		try {
+			model.move(new int[] { 4, 2 }, new int[] { 0, 0 });
+			fail("covered block was moved");
+		} catch (final IllegalArgumentException e) {
+			assertHash(model);
+		}
+		final BlocksWorldModel fork = model.fork();
+		assertHash(fork);
+		fork.move(1, 0);
+		assertHash(fork);
+		assertHash(model);
+		model.allBlocksToTable();
+		assertHash(model);
+		model.reset(new int[] { 0, 5, 1, 0, 4, 0 });
+		assertHash(model);
+		// equal states, equal hashes
+		assertEquals(new BlocksWorldModel(new int[] { 0, 5, 1, 0, 4, 0 }).getStateHash(), model.getStateHash());
+	}
+
+	@Test
+	public void testReset() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		// 6 blocks: 2 on 5 on 4, 3 on 1, 6 alone.
+		model.reset(new int[] { 0, 5, 1, 0, 4, 0 });
+		assertArrayEquals(new int[] { 0, 5, 1, 0, 4, 0 }, model.getState());
+		assertEquals(6, model.size());
+		assertEquals(2, model.getHeight(2));
+		assertEquals(1, model.getHeight(5));
+		assertEquals(0, model.getHeight(4));
+		assertEquals(1, model.getHeight(3));
+		assertEquals(model.getStackNumber(4), model.getStackNumber(2));
+		assertEquals(model.getStackNumber(1), model.getStackNumber(3));
+		assertEquals(2, model.getAbove(5));
+		assertEquals(0, model.getAbove(2));
+		assertEquals(0, model.getAbove(6));
+	}
+
+	@Test
+	public void testResetNotifiesOnce() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final int[] events = new int[1];
+		model.addListener(e -> events[0]++);
+		events[0] = 0;
+		model.reset(new int[] { 2, 3, 4, 0, 0 });
+		assertEquals(1, events[0]);
+	}
+
+	@Test
+	public void testResetLoop() {
+		assertResetRejected(new int[] { 2, 3, 1, 0 });
+	}
+
+	@Test
+	public void testResetSelfLoop() {
+		assertResetRejected(new int[] { 0, 2, 0 });
+	}
+
+	@Test
+	public void testResetTwoOnOne() {
+		assertResetRejected(new int[] { 3, 3, 0 });
+	}
+
+	@Test
+	public void testResetZeroBased() {
+		// "block 0 on 1, block 1 on the table" numbered from 0 puts block 1 on
+		// itself.
+		assertResetRejected(new int[] { 1, 0 });
+	}
+
+	@Test
+	public void testResetOutOfRange() {
+		assertResetRejected(new int[] { 0, 3 });
+	}
+
+	@Test
+	public void testResetNegative() {
+		assertResetRejected(new int[] { 0, -1 });
+	}
+
+	@Test
+	public void testTakeChangedBlocks() {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final StringBuilder taken = new StringBuilder();
+		assertEquals(4, model.takeChangedBlocks((n, on) -> taken.append(n).append(':').append(on).append(' ')));
+		assertEquals("1:2 2:0 3:0 4:0 ", taken.toString());
+
+		model.move(new int[] { 1, 3 }, new int[] { 4, 2 });
+		taken.setLength(0);
+		// the consumer runs without the lock, so it may use the model.
+		model.takeChangedBlocks((n, on) -> {
+			taken.append(n).append(':').append(on).append(' ');
+			model.move(n, 0);
+		});
+		assertEquals("1:4 3:2 ", taken.toString());
+
+		taken.setLength(0);
+		model.takeChangedBlocks((n, on) -> taken.append(n).append(':').append(on).append(' '));
+		assertEquals("1:0 3:0 ", taken.toString());
+	}
+
+	/**
+	 * Check the free stack and the stacks of blocks 1, 2 and 3.
+	 */
+	private static void assertStacks(final BlocksWorldModel model, final int free, final int... stacks) {
+		assertEquals("free stack", free, model.getFreeStackNumber());
+		for (int n = 0; n < stacks.length; n++) {
+			assertEquals("stack of block " + (n + 1), stacks[n], model.getStackNumber(n + 1));
+		}
+	}
+
+	/**
+	 * Check that the hash kept by the model is the hash of its state.
+	 */
+	private static void assertHash(final BlocksWorldModel model) {
+		final int[] state = model.getState();
+		long hash = 0;
+		for (int n = 0; n < state.length; n++) {
+			hash ^= BlocksWorldModel.zobrist(n + 1, state[n]);
+		}
+		assertEquals(hash, model.getStateHash());
+	}
+
+	/**
+	 * Check that a start state is rejected, leaving the model as it was and
+	 * without notifying.
+	 */
+	private static void assertResetRejected(final int[] start) {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		final long version = model.getVersion();
+		final int[] events = new int[1];
+		model.addListener(e -> events[0]++);
+		events[0] = 0;
+		try {
+			model.reset(start);
+			fail("bad start state was accepted");
+		} catch (final IllegalArgumentException e) {
+			assertArrayEquals(START, model.getState());
+			assertEquals(START.length, model.size());
+			assertEquals(version, model.getVersion());
+			assertEquals(0, events[0]);
+		}
+	}
+
+	/**
+	 * Check that a sequence is rejected as a whole, leaving the state as it was.
+	 */
+	private static void assertRejected(final int[] src, final int[] dest) {
+		final BlocksWorldModel model = new BlocksWorldModel(START);
+		try {
+			model.move(src, dest);
+			fail("impossible moves were accepted");
+		} catch (final IllegalArgumentException e) {
+			assertArrayEquals(START, model.getState());
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package environment;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the depth test of {@link ZBufferRenderer}, with two overlapping faces
+ * in a tiny image of 2x2 tiles.
+ */
+public class ZBufferRendererTest {
+	private static final int WIDTH = 100;
+	private static final int HEIGHT = 70;
+	private static final int BACKGROUND = Color.lightGray.getRGB();
+	private static final int RED = Color.red.getRGB();
+	private static final int BLUE = Color.blue.getRGB();
+	private static final int BLACK = Color.black.getRGB();
+
+	private ForkJoinPool pool;
+	private ZBufferRenderer renderer;
+
+	@Before
+	public void setUp() {
+		this.pool = new ForkJoinPool(2);
+		this.renderer = new ZBufferRenderer(new BlocksWorldModel(new int[1]), this.pool);
+	}
+
+	@After
+	public void tearDown() {
+		this.pool.shutdown();
+	}
+
+	@Test
+	public void testRedFirst() {
+		assertPixels(0, 1);
+	}
+
+	@Test
+	public void testBlueFirst() {
+		assertPixels(1, 0);
+	}
+
+	/**
+	 * Red goes from x=10 to 90 and comes closer to the right: 1/distance is
+	 * 0.01 at the left and 0.03 at the right. Blue goes from x=20 to 80 at a
+	 * constant 1/distance of 0.02, so red is behind blue left of x=50 and in
+	 * front of it to the right. Red spans all four tiles.
+	 *
+	 * @param red  the place of the red face
+	 * @param blue the place of the blue face
+	 */
+	private void assertPixels(final int red, final int blue) {
+		final float[] faces = new float[2 * Cube3D.FACE_FLOATS];
+		final int[] colors = new int[2];
+		face(faces, red, 10, 10, 90, 60, 0.01f, 0.03f);
+		colors[red] = RED;
+		face(faces, blue, 20, 20, 80, 50, 0.02f, 0.02f);
+		colors[blue] = BLUE;
+		final BufferedImage image = this.renderer.render(faces, colors, 2, WIDTH, HEIGHT, BACKGROUND);
+
+		assertEquals(BACKGROUND, image.getRGB(5, 5));
+		assertEquals(BACKGROUND, image.getRGB(95, 65));
+		// only red
+		assertEquals(RED, image.getRGB(15, 15));
+		assertEquals(RED, image.getRGB(85, 55));
+		// outline of red
+		assertEquals(BLACK, image.getRGB(10, 40));
+		// blue in front
+		assertEquals(BLUE, image.getRGB(30, 30));
+		assertEquals(BLUE, image.getRGB(45, 45));
+		// red in front, also in the other tiles
+		assertEquals(RED, image.getRGB(55, 30));
+		assertEquals(RED, image.getRGB(70, 30));
+		assertEquals(RED, image.getRGB(70, 45));
+	}
+
+	/**
+	 * Put a rectangle on screen in the faces, with 1/distance going linearly
+	 * from left to right.
+	 */
+	private static void face(final float[] faces, final int f, final float left, final float top,
+			final float right, final float bottom, final float zLeft, final float zRight) {
+		final float[] corners = { left, top, zLeft, right, top, zRight, right, bottom, zRight, left, bottom,
+				zLeft };
+		System.arraycopy(corners, 0, faces, f * Cube3D.FACE_FLOATS, corners.length);
+	}
+}
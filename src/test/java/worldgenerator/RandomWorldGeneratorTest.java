@@ -0,0 +1,72 @@
+package worldgenerator;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests that the generator gives every state with the same probability, in
+ * both modes.
+ */
+public class RandomWorldGeneratorTest {
+	/**
+	 * Samples per state. Enough for the chi-square test to see a state that is
+	 * 10% too likely or unlikely.
+	 */
+	private static final int SAMPLES = 2000;
+
+	@Test
+	public void testUniform4() {
+		assertUniform(4, false);
+	}
+
+	@Test
+	public void testLowMemoryUniform4() {
+		assertUniform(4, true);
+	}
+
+	@Test
+	public void testLowMemoryUniform5() {
+		assertUniform(5, true);
+	}
+
+	@Test
+	public void testLowMemoryUniform1() {
+		assertUniform(1, true);
+	}
+
+	/**
+	 * Generate states, count them by rank and check with a chi-square test at a
+	 * significance of 0.001 that every rank is equally likely. The seed is
+	 * fixed, so the test always gives the same result.
+	 */
+	private static void assertUniform(final int N, final boolean lowMemory) {
+		final StateRanker ranker = new StateRanker(N);
+		final int states = (int) ranker.count();
+		final long[] counts = new long[states];
+		final RandomWorldGenerator generator = new RandomWorldGenerator(N, 65237, false, lowMemory);
+		final int[] state = new int[N];
+		final long samples = (long) states * SAMPLES;
+		for (long i = 0; i < samples; i++) {
+			counts[(int) ranker.rank(generator.nextState(state))]++;
+		}
+
+		double chi2 = 0;
+		for (final long count : counts) {
+			assertTrue("a state of " + N + " blocks was never generated", count > 0);
+			chi2 += (count - SAMPLES) * (double) (count - SAMPLES) / SAMPLES;
+		}
+		final int df = states - 1;
+		assertTrue("chi2=" + chi2 + " for " + df + " degrees of freedom", df == 0 || chi2 < critical(df));
+	}
+
+	/**
+	 * The chi-square value that is exceeded with probability 0.001, by the
+	 * Wilson-Hilferty approximation.
+	 */
+	private static double critical(final int df) {
+		final double z = 3.090;
+		final double a = 2.0 / (9 * df);
+		return df * Math.pow(1 - a + z * Math.sqrt(a), 3);
+	}
+}
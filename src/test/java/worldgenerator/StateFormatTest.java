@@ -0,0 +1,159 @@
+package worldgenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import worldgenerator.StateWriter.Format;
+
+/**
+ * Tests that states written by {@link StateWriter} are read back the same by
+ * {@link StateCorpus} and {@link StateReader}, also around the sizes where the
+ * binary format needs wider block numbers.
+ */
+public class StateFormatTest {
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		this.file = Files.createTempFile("states", ".bin");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(this.file);
+	}
+
+	@Test
+	public void testSmall() throws IOException {
+		assertRoundTrip(3);
+	}
+
+	@Test
+	public void testWidth255() throws IOException {
+		assertRoundTrip(255);
+	}
+
+	@Test
+	public void testWidth256() throws IOException {
+		assertRoundTrip(256);
+	}
+
+	@Test
+	public void testWidth65535() throws IOException {
+		assertRoundTrip(65535);
+	}
+
+	@Test
+	public void testWidth65536() throws IOException {
+		assertRoundTrip(65536);
+	}
+
+	@Test
+	public void testCloseAfterWriteFails() {
+		final FailingChannel channel = new FailingChannel();
+		final int[] state = new int[100];
+		try (StateWriter writer = new StateWriter(channel, Format.TEXT, state.length, 0)) {
+			for (int n = 0; n < 100000; n++) {
+				writer.write(state);
+			}
+			fail("writing did not fail");
+		} catch (final IOException e) {
+			assertEquals("disk full", e.getMessage());
+		}
+		assertFalse("channel was not closed", channel.isOpen());
+	}
+
+	/**
+	 * Write some states of N blocks in both formats and read them back.
+	 */
+	private void assertRoundTrip(final int N) throws IOException {
+		final List<int[]> states = states(N);
+		assertEquals(N < 0x100 ? 1 : N < 0x10000 ? 2 : 4, StateWriter.width(N));
+
+		write(Format.BINARY, N, states);
+		final StateCorpus corpus = new StateCorpus(this.file);
+		assertEquals(N, corpus.size());
+		assertEquals(states.size(), corpus.count());
+		for (int k = 0; k < states.size(); k++) {
+			assertArrayEquals(states.get(k), corpus.get(k, new int[N]));
+		}
+
+		write(Format.TEXT, N, states);
+		try (StateReader reader = StateReader.open(this.file)) {
+			for (final int[] state : states) {
+				assertArrayEquals(state, reader.next());
+			}
+			assertNull(reader.next());
+		}
+	}
+
+	private void write(final Format format, final int N, final List<int[]> states) throws IOException {
+		try (StateWriter writer = new StateWriter(FileChannel.open(this.file, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING), format, N, states.size())) {
+			for (final int[] state : states) {
+				writer.write(state);
+			}
+		}
+	}
+
+	/**
+	 * All blocks on the table, a tower with block N on the table, a tower with
+	 * block 1 on the table and two random states. The towers have block number
+	 * N in them, the largest number of the format.
+	 */
+	private static List<int[]> states(final int N) {
+		final List<int[]> states = new ArrayList<>();
+		states.add(new int[N]);
+		final int[] down = new int[N];
+		final int[] up = new int[N];
+		for (int x = 0; x < N; x++) {
+			down[x] = (x + 1 == N) ? 0 : x + 2;
+			up[x] = x;
+		}
+		states.add(down);
+		states.add(up);
+		final RandomWorldGenerator generator = new RandomWorldGenerator(N, 42, false, true);
+		states.add(generator.nextState(new int[N]));
+		states.add(generator.nextState(new int[N]));
+		return states;
+	}
+
+	/**
+	 * A channel that fails every write.
+	 */
+	private static class FailingChannel implements WritableByteChannel {
+		private boolean open = true;
+
+		@Override
+		public int write(final ByteBuffer src) throws IOException {
+			throw new IOException("disk full");
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.open;
+		}
+
+		@Override
+		public void close() {
+			this.open = false;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package worldgenerator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link StateRanker} and {@link StateEnumerator}, against a brute
+ * force list of all states.
+ */
+public class StateRankerTest {
+	/**
+	 * The number of states of N blocks, for N = 0..8 (OEIS A000262).
+	 */
+	private static final long[] COUNTS = { 1, 1, 3, 13, 73, 501, 4051, 37633, 394353 };
+
+	@Test
+	public void testCount() {
+		for (int N = 0; N <= 8; N++) {
+			assertEquals("states of " + N + " blocks", COUNTS[N], new StateRanker(N).count());
+		}
+	}
+
+	@Test
+	public void testRankAllStates() {
+		for (int N = 0; N <= 6; N++) {
+			final StateRanker ranker = new StateRanker(N);
+			final List<int[]> states = allStates(N);
+			assertEquals(COUNTS[N], states.size());
+			final boolean[] seen = new boolean[(int) ranker.count()];
+			final int[] out = new int[N];
+			for (final int[] state : states) {
+				final long rank = ranker.rank(state);
+				assertTrue(rank >= 0 && rank < ranker.count());
+				assertTrue("two states with rank " + rank, !seen[(int) rank]);
+				seen[(int) rank] = true;
+				assertArrayEquals(state, ranker.unrank(rank, out));
+			}
+		}
+	}
+
+	@Test
+	public void testUnrankAllRanks() {
+		for (int N = 0; N <= 6; N++) {
+			final StateRanker ranker = new StateRanker(N);
+			final int[] out = new int[N];
+			for (long rank = 0; rank < ranker.count(); rank++) {
+				assertEquals(rank, ranker.rank(ranker.unrank(rank, out)));
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRankCycle() {
+		new StateRanker(3).rank(new int[] { 2, 3, 1 });
+	}
+
+	@Test
+	public void testEnumerateSequential() {
+		for (int N = 0; N <= 6; N++) {
+			assertEnumerates(N, false);
+		}
+	}
+
+	@Test
+	public void testEnumerateParallel() {
+		for (int N = 0; N <= 8; N++) {
+			assertEnumerates(N, true);
+		}
+	}
+
+	@Test
+	public void testSplit() {
+		final StateEnumerator all = new StateEnumerator(6);
+		final Spliterator<int[]> first = all.trySplit();
+		assertEquals(COUNTS[6], first.estimateSize() + all.estimateSize());
+		final Set<String> seen = new HashSet<>();
+		first.forEachRemaining(state -> assertTrue(seen.add(Arrays.toString(state))));
+		all.forEachRemaining(state -> assertTrue(seen.add(Arrays.toString(state))));
+		assertEquals(COUNTS[6], seen.size());
+		assertNull(new StateEnumerator(6, 0, 100).trySplit());
+	}
+
+	/**
+	 * Check that the enumerator gives every state once.
+	 */
+	private static void assertEnumerates(final int N, final boolean parallel) {
+		final List<String> states = StateEnumerator.states(N, parallel).map(Arrays::toString)
+				.collect(Collectors.toList());
+		assertEquals("states of " + N + " blocks", COUNTS[N], states.size());
+		assertEquals("distinct states of " + N + " blocks", COUNTS[N], new HashSet<>(states).size());
+	}
+
+	/**
+	 * All states of N blocks, by trying every array of numbers 0..N and keeping
+	 * those without a cycle and with at most one block on each block.
+	 */
+	private static List<int[]> allStates(final int N) {
+		final int[] state = new int[N];
+		final Set<List<Integer>> states = new HashSet<>();
+		long total = 1;
+		for (int x = 0; x < N; x++) {
+			total *= N + 1;
+		}
+		for (long code = 0; code < total; code++) {
+			long c = code;
+			for (int x = 0; x < N; x++) {
+				state[x] = (int) (c % (N + 1));
+				c /= N + 1;
+			}
+			if (isValid(state)) {
+				states.add(Arrays.stream(state).boxed().collect(Collectors.toList()));
+			}
+		}
+		return states.stream().map(s -> s.stream().mapToInt(Integer::intValue).toArray())
+				.collect(Collectors.toList());
+	}
+
+	private static boolean isValid(final int[] state) {
+		final int N = state.length;
+		final boolean[] covered = new boolean[N + 1];
+		for (int x = 0; x < N; x++) {
+			final int on = state[x];
+			if (on == x + 1 || (on != 0 && covered[on])) {
+				return false;
+			}
+			covered[on] = on != 0;
+		}
+		for (int x = 0; x < N; x++) {
+			int b = x + 1;
+			for (int steps = 0; b != 0; steps++) {
+				if (steps > N) {
+					return false;
+				}
+				b = state[b - 1];
+			}
+		}
+		return true;
+	}
+}